@@ -0,0 +1,75 @@
+package com.github.gitsby.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindBenchmark {
+
+  private SQL sql;
+  private CompiledQuery query;
+  private Map<String, Object> values;
+  private BoundQuery bound;
+  private int idParameter;
+  private int ownerParameter;
+  private final NoopPreparedStatement ps = new NoopPreparedStatement();
+
+  @Setup
+  public void setUp() {
+    sql = new SQL()
+        .select("x.id")
+        .from("test_table x")
+        .where("x.id = :id and x.owner_id = :owner")
+        .where("x.name = :name and x.created_at >= :from")
+        .where("x.parent_id = :id or x.owner_id = :owner")
+        .setValue("id", 42)
+        .setValue("owner", 7L)
+        .setValue("name", "someName")
+        .setValue("from", new Timestamp(0));
+
+    query = sql.compile();
+    values = sql.collectValues();
+    bound = query.bind(values);
+    idParameter = query.getParameterId("id");
+    ownerParameter = query.getParameterId("owner");
+  }
+
+  @Benchmark
+  public PreparedStatement builderApplyParameter() throws SQLException {
+    return sql.applyParameter(ps);
+  }
+
+  @Benchmark
+  public PreparedStatement compiledApplyParameter() throws SQLException {
+    return query.applyParameter(ps, values);
+  }
+
+  @Benchmark
+  public PreparedStatement boundApplyTo() throws SQLException {
+    return bound.applyTo(ps);
+  }
+
+  @Benchmark
+  public PreparedStatement bindPrimitives() throws SQLException {
+    return bound.setInt(idParameter, 42).setLong(ownerParameter, 7L).applyTo(ps);
+  }
+
+}
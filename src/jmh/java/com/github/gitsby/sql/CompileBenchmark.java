@@ -0,0 +1,157 @@
+package com.github.gitsby.sql;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class SimpleSelect {
+
+    SQL sql;
+
+    @Setup
+    public void setUp() {
+      sql = new SQL()
+          .select("x.id, x.name")
+          .from("test_table x")
+          .where("x.id = :id")
+          .order_by("x.name");
+    }
+
+  }
+
+  @State(Scope.Benchmark)
+  public static class ManyJoins {
+
+    @Param({"20"})
+    public int joinCount;
+
+    SQL sql;
+
+    @Setup
+    public void setUp() {
+      sql = new SQL()
+          .select("x.id, x.name")
+          .from("test_table x");
+
+      for (int i = 0; i < joinCount; i++) {
+        sql.leftJoin("test_table" + i + " x" + i + " on x" + i + ".id = x.ref" + i
+                         + " and x" + i + ".type = :type" + i);
+      }
+
+      sql.where("x.status = :status");
+    }
+
+  }
+
+  @State(Scope.Benchmark)
+  public static class WithTables {
+
+    @Param({"1", "10", "100"})
+    public int withCount;
+
+    SQL sql;
+
+    @Setup
+    public void setUp() {
+      sql = new SQL()
+          .select("x.id, x.name, x.created_at")
+          .from("test_table x")
+          .where("x.status = :status")
+          .where("x.name <> 'no:param'")
+          .order_by("x.created_at desc");
+
+      for (int i = 0; i < withCount; i++) {
+        sql.with("with_table_" + i)
+            .select("y.id, sum(y.amount) as total")
+            .from("test_table" + i + " y")
+            .innerJoin("test_dict d on d.id = y.dict_id")
+            .where("y.created_at >= :from and y.created_at < :to")
+            .where("d.code = 'a:b' and y.owner_id = :owner" + i)
+            .group_by("y.id")
+            .having("sum(y.amount) > :minAmount");
+      }
+    }
+
+  }
+
+  @State(Scope.Benchmark)
+  public static class Cache {
+
+    final TemplateCache cache = new TemplateCache(16);
+
+  }
+
+  @State(Scope.Thread)
+  public static class Sink {
+
+    final Writer writer = new Writer() {
+      @Override
+      public void write(char[] buffer, int offset, int length) {
+      }
+
+      @Override
+      public Writer append(CharSequence csq, int start, int end) {
+        return this;
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+
+  }
+
+  @Benchmark
+  public CompiledQuery simpleSelect(SimpleSelect state) {
+    return state.sql.compile();
+  }
+
+  @Benchmark
+  public CompiledQuery simpleSelectCached(SimpleSelect state, Cache cache) {
+    return state.sql.compile(cache.cache);
+  }
+
+  @Benchmark
+  public CompiledQuery manyJoins(ManyJoins state) {
+    return state.sql.compile();
+  }
+
+  @Benchmark
+  public CompiledQuery compile(WithTables state) {
+    return state.sql.compile();
+  }
+
+  @Benchmark
+  public CompiledQuery compileTo(WithTables state, Sink sink) throws IOException {
+    return state.sql.compileTo(sink.writer);
+  }
+
+  @Benchmark
+  public CompiledQuery compileCached(WithTables state, Cache cache) {
+    return state.sql.compile(cache.cache);
+  }
+
+}
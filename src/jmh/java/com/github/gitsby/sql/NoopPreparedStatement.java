@@ -0,0 +1,561 @@
+package com.github.gitsby.sql;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * PreparedStatement that only consumes the values it is given, so bind benchmarks measure the
+ * library rather than a driver or a proxy.
+ */
+class NoopPreparedStatement implements PreparedStatement {
+
+  long sink;
+  Object last;
+
+  @Override
+  public void addBatch() {
+  }
+
+  @Override
+  public void addBatch(String p0) {
+  }
+
+  @Override
+  public void cancel() {
+  }
+
+  @Override
+  public void clearBatch() {
+  }
+
+  @Override
+  public void clearParameters() {
+    last = null;
+  }
+
+  @Override
+  public void clearWarnings() {
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public void closeOnCompletion() {
+  }
+
+  @Override
+  public boolean execute() {
+    return false;
+  }
+
+  @Override
+  public boolean execute(String p0, int[] p1) {
+    return false;
+  }
+
+  @Override
+  public boolean execute(String p0, String[] p1) {
+    return false;
+  }
+
+  @Override
+  public boolean execute(String p0, int p1) {
+    return false;
+  }
+
+  @Override
+  public boolean execute(String p0) {
+    return false;
+  }
+
+  @Override
+  public int[] executeBatch() {
+    return null;
+  }
+
+  @Override
+  public ResultSet executeQuery() {
+    return null;
+  }
+
+  @Override
+  public ResultSet executeQuery(String p0) {
+    return null;
+  }
+
+  @Override
+  public int executeUpdate() {
+    return 0;
+  }
+
+  @Override
+  public int executeUpdate(String p0, int[] p1) {
+    return 0;
+  }
+
+  @Override
+  public int executeUpdate(String p0, String[] p1) {
+    return 0;
+  }
+
+  @Override
+  public int executeUpdate(String p0, int p1) {
+    return 0;
+  }
+
+  @Override
+  public int executeUpdate(String p0) {
+    return 0;
+  }
+
+  @Override
+  public Connection getConnection() {
+    return null;
+  }
+
+  @Override
+  public int getFetchDirection() {
+    return 0;
+  }
+
+  @Override
+  public int getFetchSize() {
+    return 0;
+  }
+
+  @Override
+  public ResultSet getGeneratedKeys() {
+    return null;
+  }
+
+  @Override
+  public int getMaxFieldSize() {
+    return 0;
+  }
+
+  @Override
+  public int getMaxRows() {
+    return 0;
+  }
+
+  @Override
+  public ResultSetMetaData getMetaData() {
+    return null;
+  }
+
+  @Override
+  public boolean getMoreResults() {
+    return false;
+  }
+
+  @Override
+  public boolean getMoreResults(int p0) {
+    return false;
+  }
+
+  @Override
+  public ParameterMetaData getParameterMetaData() {
+    return null;
+  }
+
+  @Override
+  public int getQueryTimeout() {
+    return 0;
+  }
+
+  @Override
+  public ResultSet getResultSet() {
+    return null;
+  }
+
+  @Override
+  public int getResultSetConcurrency() {
+    return 0;
+  }
+
+  @Override
+  public int getResultSetHoldability() {
+    return 0;
+  }
+
+  @Override
+  public int getResultSetType() {
+    return 0;
+  }
+
+  @Override
+  public int getUpdateCount() {
+    return 0;
+  }
+
+  @Override
+  public SQLWarning getWarnings() {
+    return null;
+  }
+
+  @Override
+  public boolean isCloseOnCompletion() {
+    return false;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return false;
+  }
+
+  @Override
+  public boolean isPoolable() {
+    return false;
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> p0) {
+    return false;
+  }
+
+  @Override
+  public void setArray(int parameterIndex, Array x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream x, int p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream x, long p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setAsciiStream(int parameterIndex, InputStream x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBigDecimal(int parameterIndex, BigDecimal x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream x, int p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream x, long p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBinaryStream(int parameterIndex, InputStream x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, InputStream x, long p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, InputStream x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBlob(int parameterIndex, Blob x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBoolean(int parameterIndex, boolean x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setByte(int parameterIndex, byte x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setBytes(int parameterIndex, byte[] x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader x, int p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader x, long p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setCharacterStream(int parameterIndex, Reader x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Reader x, long p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Reader x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setClob(int parameterIndex, Clob x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setCursorName(String p0) {
+  }
+
+  @Override
+  public void setDate(int parameterIndex, Date x, Calendar p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setDate(int parameterIndex, Date x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setDouble(int parameterIndex, double x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setEscapeProcessing(boolean p0) {
+  }
+
+  @Override
+  public void setFetchDirection(int parameterIndex) {
+  }
+
+  @Override
+  public void setFetchSize(int parameterIndex) {
+  }
+
+  @Override
+  public void setFloat(int parameterIndex, float x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setInt(int parameterIndex, int x) {
+    sink += parameterIndex + x;
+  }
+
+  @Override
+  public void setLong(int parameterIndex, long x) {
+    sink += parameterIndex + x;
+  }
+
+  @Override
+  public void setMaxFieldSize(int parameterIndex) {
+  }
+
+  @Override
+  public void setMaxRows(int parameterIndex) {
+  }
+
+  @Override
+  public void setNCharacterStream(int parameterIndex, Reader x, long p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setNCharacterStream(int parameterIndex, Reader x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, Reader x, long p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, Reader x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setNClob(int parameterIndex, NClob x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setNString(int parameterIndex, String x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setNull(int parameterIndex, int x, String p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setNull(int parameterIndex, int x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x, int p2, int p3) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x, int p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setObject(int parameterIndex, Object x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setPoolable(boolean p0) {
+  }
+
+  @Override
+  public void setQueryTimeout(int parameterIndex) {
+  }
+
+  @Override
+  public void setRef(int parameterIndex, Ref x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setRowId(int parameterIndex, RowId x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setSQLXML(int parameterIndex, SQLXML x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setShort(int parameterIndex, short x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setString(int parameterIndex, String x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setTime(int parameterIndex, Time x, Calendar p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setTime(int parameterIndex, Time x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setTimestamp(int parameterIndex, Timestamp x, Calendar p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setTimestamp(int parameterIndex, Timestamp x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public void setURL(int parameterIndex, URL x) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  @Deprecated
+  public void setUnicodeStream(int parameterIndex, InputStream x, int p2) {
+    sink += parameterIndex;
+    last = x;
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> p0) {
+    return null;
+  }
+
+}
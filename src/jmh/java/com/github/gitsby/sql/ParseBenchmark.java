@@ -0,0 +1,53 @@
+package com.github.gitsby.sql;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Named parameter rewriting of one long condition full of quoted literals, which is what the
+ * renderer spends its time on for generated reporting SQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+  @Param({"100", "10000"})
+  public int conditionCount;
+
+  private SQL sql;
+
+  @Setup
+  public void setUp() {
+    StringBuilder where = new StringBuilder("1 = 1");
+    for (int i = 0; i < conditionCount; i++) {
+      where.append("\n and (x.code").append(i).append(" = 'it''s :not_a_param ").append(i)
+          .append("' or x.\"quoted:column\" = :param").append(i % 50)
+          .append("::text)");
+    }
+
+    sql = new SQL()
+        .select("x.id")
+        .from("test_table x")
+        .where(where.toString());
+  }
+
+  @Benchmark
+  public CompiledQuery parse() {
+    return sql.compile();
+  }
+
+}
@@ -1,34 +1,56 @@
 package com.github.gitsby.sql;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.RandomAccess;
+import java.util.Set;
 
 abstract class AbstractSQL<T> {
 
   private static final String AND = ") \nAND (";
   private static final String OR = ") \nOR (";
+  private static final String EXCLUDED = "EXCLUDED";
+  static final int MAX_BUCKET = 1024;
+  // binds per statement PostgreSQL accepts, the lowest limit of the common drivers
+  static final int MAX_IN_LIST = Short.MAX_VALUE;
+
+  /**
+   * Parameter name of a numeric {@link #limit(long)}, CTE limits are qualified as
+   * {@code "view.#limit"}. The {@code #} keeps it apart from names written in the SQL text.
+   */
+  public static final String LIMIT_PARAMETER = "#limit";
+
+  public static final String OFFSET_PARAMETER = "#offset";
 
   public abstract T getSelf();
 
   protected abstract T createNew();
 
-  final Map<String, T> withMap = new LinkedHashMap<>();
-  final Map<String, Object> valueMap = new HashMap<>();
-  final Map<String, List<Integer>> indexMap = new LinkedHashMap<>();
+  Map<String, T> withMap = new LinkedHashMap<>();
+  Map<String, Object> valueMap = new HashMap<>();
+  private Dialect dialect = Dialect.DEFAULT;
+  // maps shared with a fork or its parent are copied before the first change
+  private boolean withShared;
+  private boolean valuesShared;
+  private boolean frozen;
 
 
   public T with(String view) {
+    checkMutable();
     if (withMap.containsKey(view)) {
       throw new IllegalArgumentException("Already exists " + view);
     }
@@ -36,57 +58,179 @@ abstract class AbstractSQL<T> {
     {
       T t = createNew();
 
+      if (withShared) {
+        withMap = new LinkedHashMap<>(withMap);
+        withShared = false;
+      }
       withMap.put(view, t);
 
       return t;
     }
   }
 
+  /**
+   * Makes this builder and its CTEs immutable. A frozen builder can be compiled, bound and forked
+   * from any number of threads once it is safely published, e.g. through a final field; changing
+   * it throws {@link IllegalStateException}.
+   */
+  public T freeze() {
+    if (!frozen) {
+      for (T with : withMap.values()) {
+        ((AbstractSQL<?>) with).freeze();
+      }
+      sql().share();
+      withShared = true;
+      valuesShared = true;
+      frozen = true;
+    }
+    return getSelf();
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Mutable child with the clauses, CTEs, values and dialect of this builder. Nothing is copied up
+   * front: the child shares the clause lists and maps and copies one only when it changes it, so
+   * deriving a variant with one more {@code where} from a frozen base costs a few small objects.
+   * The parent may still be changed if it is not frozen, neither side sees the other's changes.
+   */
+  @SuppressWarnings("unchecked")
+  public T fork() {
+    T child = createNew();
+    AbstractSQL<T> fork = (AbstractSQL<T>) child;
+    fork.sql = sql().fork();
+    fork.dialect = dialect;
+
+    fork.valueMap = valueMap;
+    fork.valuesShared = true;
+    if (!valuesShared) {
+      valuesShared = true;
+    }
+
+    if (frozen) {
+      // frozen CTEs are shared as they are, the child can only add new ones
+      fork.withMap = withMap;
+      fork.withShared = true;
+    } else {
+      for (Entry<String, T> e : withMap.entrySet()) {
+        fork.withMap.put(e.getKey(), ((AbstractSQL<T>) e.getValue()).fork());
+      }
+    }
+    return child;
+  }
+
+  private void checkMutable() {
+    if (frozen) {
+      throw new IllegalStateException("SQL is frozen, fork() it to make changes");
+    }
+  }
+
   public T select(String columns) {
-    sql().statementType = SQLStatement.StatementType.SELECT;
-    sql().select.add(columns);
+    edit().statementType = SQLStatement.StatementType.SELECT;
+    edit().select.add(columns);
     return getSelf();
   }
 
   public T selectDistinct(String columns) {
-    sql().distinct = true;
+    edit().distinct = true;
     select(columns);
     return getSelf();
   }
 
+  public T insertInto(String table) {
+    edit().statementType = SQLStatement.StatementType.INSERT;
+    edit().tables.add(table);
+    return getSelf();
+  }
+
+  public T columns(String columns) {
+    edit().columns.add(columns);
+    return getSelf();
+  }
+
+  public T values(String values) {
+    edit().values.add(values);
+    return getSelf();
+  }
+
+  public T update(String table) {
+    edit().statementType = SQLStatement.StatementType.UPDATE;
+    edit().tables.add(table);
+    return getSelf();
+  }
+
+  public T set(String sets) {
+    edit().sets.add(sets);
+    return getSelf();
+  }
+
+  public T deleteFrom(String table) {
+    edit().statementType = SQLStatement.StatementType.DELETE;
+    edit().tables.add(table);
+    return getSelf();
+  }
+
+  public T returning(String columns) {
+    edit().returning.add(columns);
+    return getSelf();
+  }
+
+  public T upsertInto(String table) {
+    edit().statementType = SQLStatement.StatementType.UPSERT;
+    edit().tables.add(table);
+    return getSelf();
+  }
+
+  public T onConflict(String columns) {
+    edit().conflictTarget.add(columns);
+    return getSelf();
+  }
+
+  public static String excluded(String column) {
+    return EXCLUDED + "." + column;
+  }
+
+  public T dialect(Dialect dialect) {
+    checkMutable();
+    this.dialect = dialect;
+    return getSelf();
+  }
+
   public T from(String table) {
-    sql().tables.add(table);
+    edit().tables.add(table);
     return getSelf();
   }
 
   public T join(String join) {
-    sql().joins.put(join, JoinType.JOIN);
+    edit().join(join, JoinType.JOIN);
     return getSelf();
   }
 
   public T innerJoin(String join) {
-    sql().joins.put(join, JoinType.INNER);
+    edit().join(join, JoinType.INNER);
     return getSelf();
   }
 
   public T leftJoin(String join) {
-    sql().joins.put(join, JoinType.LEFT);
+    edit().join(join, JoinType.LEFT);
     return getSelf();
   }
 
   public T rightjoin(String join) {
-    sql().joins.put(join, JoinType.RIGHT);
+    edit().join(join, JoinType.RIGHT);
     return getSelf();
   }
 
   public T outerjoin(String join) {
-    sql().joins.put(join, JoinType.OUTER);
+    edit().join(join, JoinType.OUTER);
     return getSelf();
   }
 
   public T where(String conditions) {
-    sql().where.add(conditions);
-    sql().lastList = sql().where;
+    edit().where.add(conditions);
+    edit().lastList = sql().where;
     return getSelf();
   }
 
@@ -102,28 +246,55 @@ abstract class AbstractSQL<T> {
 //  }
 
   public T group_by(String columns) {
-    sql().groupBy.add(columns);
+    edit().groupBy.add(columns);
     return getSelf();
   }
 
   public T having(String conditions) {
-    sql().having.add(conditions);
-    sql().lastList = sql().having;
+    edit().having.add(conditions);
+    edit().lastList = sql().having;
     return getSelf();
   }
 
   public T order_by(String columns) {
-    sql().orderBy.add(columns);
+    edit().orderBy.add(columns);
     return getSelf();
   }
 
   public T limit(String conditions) {
-    sql().limit = conditions;
+    edit().limit = conditions;
+    edit().limitValue = null;
+    return getSelf();
+  }
+
+  /**
+   * Numeric limit rendered as a placeholder, so queries that differ only in page size share one
+   * SQL text. The value is bound as {@link #LIMIT_PARAMETER}.
+   */
+  public T limit(long limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit must not be negative: " + limit);
+    }
+    edit().limit = null;
+    edit().limitValue = limit;
     return getSelf();
   }
 
   public T offset(String conditions) {
-    sql().offset = conditions;
+    edit().offset = conditions;
+    edit().offsetValue = null;
+    return getSelf();
+  }
+
+  /**
+   * Numeric offset rendered as a placeholder and bound as {@link #OFFSET_PARAMETER}.
+   */
+  public T offset(long offset) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("Offset must not be negative: " + offset);
+    }
+    edit().offset = null;
+    edit().offsetValue = offset;
     return getSelf();
   }
 
@@ -133,67 +304,309 @@ abstract class AbstractSQL<T> {
     return sql;
   }
 
+  private SQLStatement edit() {
+    checkMutable();
+    return sql;
+  }
+
+  /**
+   * Writes the statement with its CTEs to {@code a} as written, named parameters included.
+   */
   public <A extends Appendable> A usingAppender(A a) {
-    sql().sql(a);
+    compileBuild(new SafeAppendable(a, dialect));
     return a;
   }
 
-  public String compile() {
-    return compileBuild((SQL) getSelf(), true);
+  /**
+   * Compiles straight into {@code out}, fragment by fragment, without building the SQL text on the
+   * heap. The returned query carries the parameter table for binding but no text, so
+   * {@link CompiledQuery#getSql()} is not available on it.
+   */
+  public CompiledQuery compileTo(Appendable out) throws IOException {
+    QueryEvent event = QueryEvent.start();
+    QueryMetrics metrics = Instrumentation.metrics;
+    long start = metrics == QueryMetrics.NOOP ? 0 : System.nanoTime();
+
+    ParameterIndex.Builder index = newIndex();
+    SafeAppendable builder = new SafeAppendable(out, dialect, index, expansions(collectValues()));
+    try {
+      compileBuild(builder);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    CompiledQuery query = new CompiledQuery(null, index.build());
+
+    if (metrics != QueryMetrics.NOOP) {
+      metrics.compiled(null, System.nanoTime() - start, builder.written,
+                       query.getPlaceholderCount(), builder.cteCount);
+    }
+    event.finish(QueryEvent.COMPILE, query);
+    return query;
+  }
+
+  public CompiledQuery compile() {
+    return compileBuild(expansions(collectValues()));
+  }
+
+  public CompiledQuery compile(TemplateCache cache) {
+    return compile(cache, expansions(collectValues()));
   }
 
-  protected String compileBuild(SQL mainSQL, boolean isMainSql) {
+  private CompiledQuery compile(TemplateCache cache, Map<String, Integer> expansions) {
+    Object shape = expansions.isEmpty() ? shape() : Arrays.asList(shape(), expansions);
+    return cache.get(shape, () -> compileBuild(expansions));
+  }
+
+  // Collection values expand to one placeholder per element, padded to the next power of two
+  // so that lists of similar length share one SQL text
+  static Map<String, Integer> expansions(Map<String, Object> values) {
+    Map<String, Integer> expansions = null;
+    for (Entry<String, Object> entry : values.entrySet()) {
+      if (entry.getValue() instanceof Collection) {
+        int size = ((Collection<?>) entry.getValue()).size();
+        if (size > MAX_IN_LIST) {
+          throw new IllegalArgumentException(
+              "Collection " + entry.getKey() + " has " + size + " values, more than the "
+                  + MAX_IN_LIST + " placeholders drivers accept; bind an SqlArray or use "
+                  + "ChunkedDml");
+        }
+        if (expansions == null) {
+          expansions = new HashMap<>();
+        }
+        expansions.put(entry.getKey(), bucket(size));
+      }
+    }
+    return expansions == null ? Collections.emptyMap() : expansions;
+  }
+
+  // beyond MAX_BUCKET lists grow in steps of it, doubling would add thousands of placeholders
+  static int bucket(int size) {
+    if (size > MAX_BUCKET) {
+      return Math.min((size + MAX_BUCKET - 1) / MAX_BUCKET * MAX_BUCKET, MAX_IN_LIST);
+    }
+    return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+  }
+
+  Object shape() {
+    List<Object> shape = new ArrayList<>(withMap.size() * 2 + 1);
+    for (Entry<String, T> e : withMap.entrySet()) {
+      shape.add(e.getKey());
+      shape.add(((AbstractSQL<?>) e.getValue()).shape());
+    }
+    shape.add(sql().shape());
+    shape.add(dialect);
+    return shape;
+  }
+
+  /**
+   * Lower case names of the tables this statement and its CTEs read or write, from the first word
+   * of every FROM, JOIN, INSERT INTO, UPDATE and DELETE FROM entry. Subqueries and the CTEs
+   * themselves are left out.
+   */
+  Set<String> tables() {
+    Set<String> tables = new LinkedHashSet<>();
+    collectTables(tables);
+    return tables;
+  }
+
+  /**
+   * Replaces the where clauses with one parenthesized clause, so that a condition added afterwards
+   * applies to all of them even when one has a top level {@code OR}.
+   */
+  T groupWhere() {
+    if (!sql().where.isEmpty()) {
+      String grouped = "(" + String.join(" AND ", sql().where) + ")";
+      edit().where.clear();
+      edit().where.add(grouped);
+    }
+    return getSelf();
+  }
+
+  /**
+   * The select list as written, the entries of all {@code select} calls joined by commas.
+   */
+  String selectList() {
+    return String.join(", ", sql().select);
+  }
+
+  private void collectTables(Set<String> tables) {
+    for (T with : withMap.values()) {
+      ((AbstractSQL<?>) with).collectTables(tables);
+    }
+    for (String from : sql().tables) {
+      for (String table : from.split(",")) {
+        addTable(tables, table);
+      }
+    }
+    for (String join : sql().joins.keySet()) {
+      addTable(tables, join);
+    }
+    for (String view : withMap.keySet()) {
+      tables.remove(tableName(view));
+    }
+  }
+
+  private static void addTable(Set<String> tables, String clause) {
+    String name = tableName(clause);
+    if (!name.isEmpty()) {
+      tables.add(name);
+    }
+  }
+
+  // "Orders o ON o.id = x" is orders, "(SELECT ...) s" is a subquery and has no name
+  static String tableName(String clause) {
+    String trimmed = clause.trim();
+    int end = 0;
+    while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end))
+           && trimmed.charAt(end) != '(') {
+      end++;
+    }
+    return trimmed.substring(0, end).replace("\"", "").toLowerCase(Locale.ROOT);
+  }
+
+  protected CompiledQuery compileBuild(Map<String, Integer> expansions) {
+    QueryEvent event = QueryEvent.start();
+    QueryMetrics metrics = Instrumentation.metrics;
+    long start = metrics == QueryMetrics.NOOP ? 0 : System.nanoTime();
+
+    StringBuilder sb = new StringBuilder();
+    ParameterIndex.Builder index = newIndex();
+    SafeAppendable builder = new SafeAppendable(sb, dialect, index, expansions);
+
+    compileBuild(builder);
+    CompiledQuery query = new CompiledQuery(sb.toString(), index.build());
+
+    if (metrics != QueryMetrics.NOOP) {
+      metrics.compiled(query.getSql(), System.nanoTime() - start, sb.length(),
+                       query.getPlaceholderCount(), builder.cteCount);
+    }
+    event.finish(QueryEvent.COMPILE, query);
+    return query;
+  }
+
+  /**
+   * Compiles {@code statements} into one text with {@code separators[k]} before statement
+   * {@code k} and the last separator after them. The parameters of statement {@code k} are named
+   * {@code "#k.name"}, so placeholders are numbered across all statements and equal names do not
+   * collide. All statements must use one dialect.
+   */
+  static BoundQuery bindAll(List<? extends AbstractSQL<?>> statements, String[] separators) {
+    if (separators.length != statements.size() + 1) {
+      throw new IllegalArgumentException(
+          "Expected " + (statements.size() + 1) + " separators but got " + separators.length);
+    }
+    AbstractSQL<?> first = statements.get(0);
+    Dialect dialect = first.dialect;
+    Map<String, Object> values = new HashMap<>();
+    for (int k = 0; k < statements.size(); k++) {
+      AbstractSQL<?> statement = statements.get(k);
+      if (statement.dialect != dialect) {
+        throw new IllegalArgumentException(
+            "Statements use different dialects: " + dialect + " and " + statement.dialect);
+      }
+      for (Entry<String, Object> value : statement.collectValues().entrySet()) {
+        values.put(partPrefix(k) + value.getKey(), value.getValue());
+      }
+    }
+
+    QueryEvent event = QueryEvent.start();
+    QueryMetrics metrics = Instrumentation.metrics;
+    long start = metrics == QueryMetrics.NOOP ? 0 : System.nanoTime();
+
     StringBuilder sb = new StringBuilder();
+    ParameterIndex.Builder index = first.newIndex();
+    SafeAppendable builder = new SafeAppendable(sb, dialect, index, expansions(values));
+    for (int k = 0; k < statements.size(); k++) {
+      builder.append(separators[k]);
+      AbstractSQL<?> statement = statements.get(k);
+      builder.prefix = partPrefix(k);
+      statement.compileBuild(builder);
+      builder.prefix = "";
+    }
+    builder.append(separators[statements.size()]);
+    CompiledQuery query = new CompiledQuery(sb.toString(), index.build());
+
+    if (metrics != QueryMetrics.NOOP) {
+      metrics.compiled(query.getSql(), System.nanoTime() - start, sb.length(),
+                       query.getPlaceholderCount(), builder.cteCount);
+    }
+    event.finish(QueryEvent.COMPILE, query);
+    return query.bind(values);
+  }
+
+  static String partPrefix(int k) {
+    return "#" + k + ".";
+  }
+
+  private ParameterIndex.Builder newIndex() {
+    return new ParameterIndex.Builder(
+        dialect.placeholderStyle() != Dialect.PlaceholderStyle.POSITIONAL);
+  }
 
+  private void compileBuild(SafeAppendable builder) {
     if (withMap.size() > 0) {
-      sb.append("WITH ");
+      builder.append("WITH ");
 
       boolean needComma = false;
 
       for (Entry<String, T> e : withMap.entrySet()) {
-        String name = e.getKey();
-        String sql;
-        if ((e.getValue() instanceof SQL)) {
-          SQL withSQL = ((SQL) e.getValue());
-          sql = withSQL.compileBuild(mainSQL, false);
-        } else {
-          sql = e.getKey();
-        }
-
         if (needComma) {
-          sb.append(",\n");
+          builder.append(",\n");
         }
         needComma = true;
 
-        sb.append(name).append(" as (");
-        if (e.getValue() instanceof SQL) {
-          sb.append("\n");
-        }
-        sb.append(sql).append("\n)");
+        builder.append(e.getKey()).append(" as (\n");
+        builder.cteCount++;
+        String scope = builder.scope;
+        builder.scope = scope + e.getKey() + ".";
+        ((AbstractSQL<?>) e.getValue()).compileBuild(builder);
+        builder.scope = scope;
+        builder.append("\n)");
       }
 
-      sb.append('\n');
+      builder.append("\n");
     }
 
-    sql().sql(sb);
-    return parse(sb.toString(), mainSQL, isMainSql);
+    sql().sql(builder);
   }
 
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
-    sql().sql(sb);
+    sql().sql(new SafeAppendable(sb, dialect));
     return sb.toString();
   }
 
   private static class SafeAppendable {
 
     private final Appendable a;
+    private final Dialect dialect;
+    private final ParameterIndex.Builder index;
+    private final Map<String, Integer> expansions;
+    // prefix for the names of generated parameters, "view." while a CTE is rendered
+    private String scope = "";
+    // prefix for the names of all parameters, "#1." while the second statement of a pipeline is
+    // rendered, so that statements compiled into one text keep their values apart
+    private String prefix = "";
+    // characters written while rewriting and number of CTEs rendered, for QueryMetrics
+    private int written;
+    private int cteCount;
     private boolean empty = true;
+    private boolean inSingleQuote;
+    private boolean inDoubleQuote;
+    private char last;
 
-    public SafeAppendable(Appendable a) {
+    public SafeAppendable(Appendable a, Dialect dialect) {
+      this(a, dialect, null, Collections.emptyMap());
+    }
+
+    public SafeAppendable(Appendable a, Dialect dialect, ParameterIndex.Builder index,
+                          Map<String, Integer> expansions) {
       super();
       this.a = a;
+      this.dialect = dialect;
+      this.index = index;
+      this.expansions = expansions;
     }
 
     public SafeAppendable append(CharSequence s) {
@@ -201,13 +614,101 @@ abstract class AbstractSQL<T> {
         if (empty && s.length() > 0) {
           empty = false;
         }
-        a.append(s);
+        if (index == null) {
+          a.append(s);
+        } else {
+          appendParsed(s);
+        }
       } catch (IOException e) {
-        throw new RuntimeException(e);
+        throw new UncheckedIOException(e);
       }
       return this;
     }
 
+    // Replaces :name with ? and records its index while the fragment is copied,
+    // quote state carries over from one fragment to the next
+    private void appendParsed(CharSequence s) throws IOException {
+      int length = s.length();
+      int start = 0;
+
+      for (int i = 0; i < length; i++) {
+        char c = s.charAt(i);
+        if (inSingleQuote) {
+          if (c == '\'') {
+            inSingleQuote = false;
+          }
+        } else if (inDoubleQuote) {
+          if (c == '"') {
+            inDoubleQuote = false;
+          }
+        } else if (c == '\'') {
+          inSingleQuote = true;
+        } else if (c == '"') {
+          inDoubleQuote = true;
+        } else if (c == ':' && i + 1 < length && last != ':'
+            && Character.isJavaIdentifierStart(s.charAt(i + 1))) {
+          int j = i + 2;
+          while (j < length && Character.isJavaIdentifierPart(s.charAt(j))) {
+            j++;
+          }
+          String name = s.subSequence(i + 1, j).toString();
+          if (!prefix.isEmpty()) {
+            name = prefix + name;
+          }
+
+          a.append(s, start, i);
+          written += i - start;
+          int width = expansions.isEmpty() ? 0 : expansions.getOrDefault(name, 0);
+          appendPlaceholders(index.add(name, width), width);
+
+          start = j;
+          i = j - 1;
+          c = s.charAt(i);
+        }
+        last = c;
+      }
+
+      a.append(s, start, length);
+      written += length - start;
+    }
+
+    private void appendPlaceholders(int number, int width) throws IOException {
+      Dialect.PlaceholderStyle style = dialect.placeholderStyle();
+      for (int k = 0, count = Math.max(width, 1); k < count; k++) {
+        if (k > 0) {
+          a.append(", ");
+          written += 2;
+        }
+        if (style == Dialect.PlaceholderStyle.POSITIONAL) {
+          a.append('?');
+          written++;
+        } else {
+          String placeholder = (style == Dialect.PlaceholderStyle.DOLLAR_NUMBERED ? "$" : "?")
+              + (number + k);
+          a.append(placeholder);
+          written += placeholder.length();
+        }
+      }
+    }
+
+    // Generated parameter, rendered as its value when not rewriting
+    public SafeAppendable appendParameter(String name, Object value) {
+      if (index == null) {
+        return append(String.valueOf(value));
+      }
+      empty = false;
+      try {
+        appendPlaceholders(index.add(prefix + scope + name, 0), 0);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return this;
+    }
+
+    public void startStatement() {
+      empty = true;
+    }
+
     public boolean isEmpty() {
       return empty;
     }
@@ -224,27 +725,171 @@ abstract class AbstractSQL<T> {
     }
   }
 
+  // Clause list that may share its elements with a forked statement, copied on the first add
+  private static final class ClauseList extends AbstractList<String> implements RandomAccess {
+
+    private List<String> items;
+    private boolean shared;
+
+    private ClauseList() {
+      this.items = new ArrayList<>();
+    }
+
+    private ClauseList(List<String> items) {
+      this.items = items;
+      this.shared = true;
+    }
+
+    private ClauseList fork() {
+      return new ClauseList(items);
+    }
+
+    private void share() {
+      if (!shared) {
+        shared = true;
+      }
+    }
+
+    @Override
+    public String get(int index) {
+      return items.get(index);
+    }
+
+    @Override
+    public int size() {
+      return items.size();
+    }
+
+    @Override
+    public boolean add(String item) {
+      if (shared) {
+        items = new ArrayList<>(items);
+        shared = false;
+      }
+      return items.add(item);
+    }
+
+    @Override
+    public void clear() {
+      if (shared) {
+        items = new ArrayList<>();
+        shared = false;
+      } else {
+        items.clear();
+      }
+    }
+
+  }
+
   private static class SQLStatement {
 
     public enum StatementType {
-      SELECT
+      SELECT, INSERT, UPDATE, DELETE, UPSERT
     }
 
 
-    HashMap<String, JoinType> joins = new LinkedHashMap<>();
+    Map<String, JoinType> joins;
+    private boolean joinsShared;
 
     StatementType statementType;
-    List<String> tables = new ArrayList<>();
-    List<String> select = new ArrayList<>();
-    List<String> where = new ArrayList<>();
-    List<String> having = new ArrayList<>();
-    List<String> groupBy = new ArrayList<>();
-    List<String> orderBy = new ArrayList<>();
+    final ClauseList tables;
+    final ClauseList select;
+    final ClauseList where;
+    final ClauseList having;
+    final ClauseList groupBy;
+    final ClauseList orderBy;
+    final ClauseList columns;
+    final ClauseList values;
+    final ClauseList sets;
+    final ClauseList returning;
+    final ClauseList conflictTarget;
     List<String> lastList = new ArrayList<>();
     String limit = null;
     String offset = null;
+    Long limitValue;
+    Long offsetValue;
     boolean distinct;
 
+    SQLStatement() {
+      joins = new LinkedHashMap<>();
+      tables = new ClauseList();
+      select = new ClauseList();
+      where = new ClauseList();
+      having = new ClauseList();
+      groupBy = new ClauseList();
+      orderBy = new ClauseList();
+      columns = new ClauseList();
+      values = new ClauseList();
+      sets = new ClauseList();
+      returning = new ClauseList();
+      conflictTarget = new ClauseList();
+    }
+
+    private SQLStatement(SQLStatement parent) {
+      joins = parent.joins;
+      joinsShared = true;
+      statementType = parent.statementType;
+      tables = parent.tables.fork();
+      select = parent.select.fork();
+      where = parent.where.fork();
+      having = parent.having.fork();
+      groupBy = parent.groupBy.fork();
+      orderBy = parent.orderBy.fork();
+      columns = parent.columns.fork();
+      values = parent.values.fork();
+      sets = parent.sets.fork();
+      returning = parent.returning.fork();
+      conflictTarget = parent.conflictTarget.fork();
+      limit = parent.limit;
+      offset = parent.offset;
+      limitValue = parent.limitValue;
+      offsetValue = parent.offsetValue;
+      distinct = parent.distinct;
+    }
+
+    private SQLStatement fork() {
+      share();
+      return new SQLStatement(this);
+    }
+
+    // after this, changes to either side copy first, a frozen statement is never written again
+    private void share() {
+      if (!joinsShared) {
+        joinsShared = true;
+      }
+      tables.share();
+      select.share();
+      where.share();
+      having.share();
+      groupBy.share();
+      orderBy.share();
+      columns.share();
+      values.share();
+      sets.share();
+      returning.share();
+      conflictTarget.share();
+    }
+
+    private void join(String join, JoinType type) {
+      if (joinsShared) {
+        joins = new LinkedHashMap<>(joins);
+        joinsShared = false;
+      }
+      joins.put(join, type);
+    }
+
+    private List<Object> shape() {
+      return Arrays.asList(statementType, distinct,
+                           new ArrayList<>(select), new ArrayList<>(tables),
+                           new ArrayList<>(joins.keySet()), new ArrayList<>(joins.values()),
+                           new ArrayList<>(where), new ArrayList<>(groupBy),
+                           new ArrayList<>(having), new ArrayList<>(orderBy),
+                           new ArrayList<>(columns), new ArrayList<>(values),
+                           new ArrayList<>(sets), new ArrayList<>(returning),
+                           new ArrayList<>(conflictTarget),
+                           limit, offset, limitValue != null, offsetValue != null);
+    }
+
     private void sqlClause(SafeAppendable builder, String keyword, List<String> parts, String open,
                            String close, String conjunction) {
       if (!parts.isEmpty()) {
@@ -282,6 +927,16 @@ abstract class AbstractSQL<T> {
       }
     }
 
+    private void sqlClause(SafeAppendable builder, String keyword, String name, Long value,
+                           String close) {
+      if (value != null) {
+        if (!builder.isEmpty()) {
+          builder.append("\n");
+        }
+        builder.append(keyword).append(" ").appendParameter(name, value).append(close);
+      }
+    }
+
     private String selectSQL(SafeAppendable builder) {
       if (distinct) {
         sqlClause(builder, "SELECT DISTINCT", select, "", "", ", \n");
@@ -301,256 +956,230 @@ abstract class AbstractSQL<T> {
       sqlClause(builder, "GROUP BY", groupBy, "", "", ", ");
       sqlClause(builder, "HAVING", having, "", "", " AND ");
       sqlClause(builder, "ORDER BY", orderBy, "", "", ", ");
-      sqlClause(builder, "LIMIT", limit, "", "", "");
-      sqlClause(builder, "OFFSET", offset, "", "", "");
+      if (builder.dialect.limitStyle() == Dialect.LimitStyle.OFFSET_FETCH) {
+        sqlClause(builder, "OFFSET", offset, "", " ROWS", "");
+        sqlClause(builder, "OFFSET", OFFSET_PARAMETER, offsetValue, " ROWS");
+        sqlClause(builder, "FETCH FIRST", limit, "", " ROWS ONLY", "");
+        sqlClause(builder, "FETCH FIRST", LIMIT_PARAMETER, limitValue, " ROWS ONLY");
+      } else {
+        sqlClause(builder, "LIMIT", limit, "", "", "");
+        sqlClause(builder, "LIMIT", LIMIT_PARAMETER, limitValue, "");
+        sqlClause(builder, "OFFSET", offset, "", "", "");
+        sqlClause(builder, "OFFSET", OFFSET_PARAMETER, offsetValue, "");
+      }
       return builder.toString();
     }
 
-    public String sql(Appendable a) {
-      SafeAppendable builder = new SafeAppendable(a);
-
-      if (statementType == null) {
-        return null;
+    private void list(SafeAppendable builder, List<String> parts, String prefix) {
+      for (int i = 0, n = parts.size(); i < n; i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        builder.append(prefix).append(parts.get(i));
       }
+    }
 
-      String answer;
-
-      switch (statementType) {
-
-        case SELECT:
-          answer = selectSQL(builder);
-          break;
-
-        default:
-          answer = null;
+    private void insertValuesSQL(SafeAppendable builder) {
+      sqlClause(builder, "INSERT INTO", tables, "", "", "");
+      if (!columns.isEmpty()) {
+        builder.append(" (");
+        list(builder, columns, "");
+        builder.append(")");
       }
-
-      return answer;
+      sqlClause(builder, "VALUES", values, "(", ")", "), (");
     }
 
-  }
-
-  private String parse(String query, SQL mainSQL, boolean isMainSQL) {
-    int length = query.length();
-    StringBuilder parsedQuery = new StringBuilder(length);
-    boolean inSingleQuote = false;
-    boolean inDoubleQuote = false;
-    int index = indexMap.size() + 1;
+    private String insertSQL(SafeAppendable builder) {
+      insertValuesSQL(builder);
+      sqlClause(builder, "RETURNING", returning, "", "", ", ");
+      return builder.toString();
+    }
 
-    for (int i = 0; i < length; i++) {
-      char c = query.charAt(i);
-      if (inSingleQuote) {
-        if (c == '\'') {
-          inSingleQuote = false;
+    private String upsertSQL(SafeAppendable builder) {
+      if (sets.isEmpty() && !where.isEmpty()) {
+        // without set() the upsert only inserts, there is no update for the condition to guard
+        throw new IllegalStateException("Upsert WHERE needs set()");
+      }
+      if (builder.dialect.upsertStyle() == Dialect.UpsertStyle.ON_CONFLICT) {
+        if (!sets.isEmpty() && conflictTarget.isEmpty()) {
+          throw new IllegalStateException("ON CONFLICT DO UPDATE needs a conflict target");
         }
-      } else if (inDoubleQuote) {
-        if (c == '"') {
-          inDoubleQuote = false;
+        insertValuesSQL(builder);
+        builder.append("\nON CONFLICT");
+        if (!conflictTarget.isEmpty()) {
+          builder.append(" (");
+          list(builder, conflictTarget, "");
+          builder.append(")");
         }
-      } else {
-        if (c == '\'') {
-          inSingleQuote = true;
-        } else if (c == '"') {
-          inDoubleQuote = true;
-        } else if (c == ':' && i + 1 < length && query.charAt(i - 1) != ':' &&
-            Character.isJavaIdentifierStart(query.charAt(i + 1))) {
-          int j = i + 2;
-          while (j < length && Character.isJavaIdentifierPart(query.charAt(j))) {
-            j++;
-          }
-          String name = query.substring(i + 1, j);
-          c = '?';
-          i += name.length();
-
-          List<Integer> indexList = indexMap.computeIfAbsent(name, k -> new LinkedList<>());
-          indexList.add(index);
-
-          index++;
+        if (sets.isEmpty()) {
+          builder.append(" DO NOTHING");
+        } else {
+          builder.append(" DO UPDATE");
+          sqlClause(builder, "SET", sets, "", "", ", ");
+          sqlClause(builder, "WHERE", where, "", "", " AND ");
         }
+        sqlClause(builder, "RETURNING", returning, "", "", ", ");
+        return builder.toString();
       }
-      parsedQuery.append(c);
-    }
-
-    if (isMainSQL) {
-      fillSqlValuesFromWithTables(mainSQL);
-      fillMainSqlIndexesFromWithTables(mainSQL);
-    }
 
-    return parsedQuery.toString();
-  }
+      if (conflictTarget.isEmpty()) {
+        throw new IllegalStateException("MERGE upsert needs a conflict target");
+      }
+      if (columns.isEmpty()) {
+        throw new IllegalStateException("MERGE upsert needs columns");
+      }
+      if (!returning.isEmpty()) {
+        throw new IllegalStateException("MERGE upsert does not support RETURNING");
+      }
 
-  protected void fillSqlValuesFromWithTables(SQL sql) {
-    for (Entry<String, SQL> entry : sql.withMap.entrySet()) {
-      SQL withSql = entry.getValue();
-      for (Entry<String, Object> valueEntry : withSql.valueMap.entrySet()) {
-        if (sql.valueMap.get(valueEntry.getKey()) != null) {
-          throw new IllegalArgumentException("Value for key \"" + valueEntry.getKey() + "\" is set more than once");
+      // MERGE exposes the new row under the same EXCLUDED name as ON CONFLICT does
+      String table = tables.get(0).trim();
+      String alias = table.substring(table.lastIndexOf(' ') + 1);
+      List<String> columnNames = new ArrayList<>();
+      for (String part : columns) {
+        for (String column : part.split(",")) {
+          columnNames.add(column.trim());
         }
-        sql.valueMap.put(valueEntry.getKey(), valueEntry.getValue());
       }
-    }
-  }
-
-  protected void fillMainSqlIndexesFromWithTables(SQL sql) {
-    int lastWithTableIndex = calculateIndexesForWithTables(sql);
-
-    shiftIndexMapValues(lastWithTableIndex);
 
-    mergeWithTableIndexMapValues(sql);
-  }
-
-  private int calculateIndexesForWithTables(SQL sql) {
-    int indexCount = 0;
-    boolean isFirst = true;
-    for (Entry<String, SQL> entry : sql.withMap.entrySet()) {
-      SQL withSql = entry.getValue();
-
-      int withSqlIndexCount = 0;
-      for (Entry<String, List<Integer>> indexEntry : withSql.indexMap.entrySet()) {
-        List<Integer> list = indexEntry.getValue();
-        for (int i = 0; i < list.size(); i++) {
-          if (!isFirst) {
-            list.set(i, list.get(i) + indexCount);
-          }
+      sqlClause(builder, "MERGE INTO", tables, "", "", "");
+      sqlClause(builder, "USING (VALUES", values, "(", "))", "), (");
+      builder.append(" AS " + EXCLUDED + " (");
+      list(builder, columnNames, "");
+      builder.append(")\nON ");
+      for (int i = 0, n = conflictTarget.size(); i < n; i++) {
+        if (i > 0) {
+          builder.append(" AND ");
+        }
+        String column = conflictTarget.get(i).trim();
+        builder.append(alias).append(".").append(column)
+            .append(" = ").append(excluded(column));
+      }
+      if (!sets.isEmpty()) {
+        builder.append("\nWHEN MATCHED");
+        for (String condition : where) {
+          builder.append(" AND ").append(condition);
         }
-        withSqlIndexCount += list.size();
+        builder.append(" THEN UPDATE");
+        sqlClause(builder, "SET", sets, "", "", ", ");
       }
+      builder.append("\nWHEN NOT MATCHED THEN INSERT (");
+      list(builder, columnNames, "");
+      builder.append(") VALUES (");
+      list(builder, columnNames, EXCLUDED + ".");
+      builder.append(")");
+      return builder.toString();
+    }
 
-      indexCount += withSqlIndexCount;
-      isFirst = false;
+    private String updateSQL(SafeAppendable builder) {
+      sqlClause(builder, "UPDATE", tables, "", "", "");
+      sqlClause(builder, "SET", sets, "", "", ", ");
+      sqlClause(builder, "WHERE", where, "", "", " AND ");
+      sqlClause(builder, "RETURNING", returning, "", "", ", ");
+      return builder.toString();
     }
-    return indexCount;
-  }
 
-  private void shiftIndexMapValues(int valueToShift) {
-    for (Entry<String, List<Integer>> indexEntry : indexMap.entrySet()) {
-      List<Integer> indexes = indexEntry.getValue();
-      for (int i = 0; i < indexes.size(); i++) {
-        indexes.set(i, indexes.get(i) + valueToShift);
-      }
+    private String deleteSQL(SafeAppendable builder) {
+      sqlClause(builder, "DELETE FROM", tables, "", "", "");
+      sqlClause(builder, "WHERE", where, "", "", " AND ");
+      sqlClause(builder, "RETURNING", returning, "", "", ", ");
+      return builder.toString();
     }
-  }
 
-  private void mergeWithTableIndexMapValues(SQL mainSQL) {
-    // Use valueMap to be sure to iterate through all keys
-    for (Entry<String, Object> valueEntry : valueMap.entrySet()) {
-      String key = valueEntry.getKey();
+    public String sql(SafeAppendable builder) {
+      builder.startStatement();
 
-      LinkedList<Integer> mergedIndexList = new LinkedList<>();
-      for (Entry<String, SQL> entry : mainSQL.withMap.entrySet()) {
-        SQL withSql = entry.getValue();
-        List<Integer> list = withSql.indexMap.get(key);
-        if (list != null) {
-          mergedIndexList.addAll(list);
-        }
+      if (statementType == null) {
+        return null;
       }
 
-      List<Integer> mainList = mainSQL.indexMap.get(key);
-      if (mainList != null) {
-        mergedIndexList.addAll(mainList);
-      }
+      String answer;
 
-      mainSQL.indexMap.put(key, mergedIndexList);
-    }
-  }
+      switch (statementType) {
 
+        case SELECT:
+          answer = selectSQL(builder);
+          break;
 
-  private List<Integer> getIndexes(String name) {
-    List<Integer> indexes = indexMap.get(name);
-    if (indexes == null) {
-      throw new IllegalArgumentException("Parameter not found: " + name);
-    }
-    return indexes;
-  }
+        case INSERT:
+          answer = insertSQL(builder);
+          break;
 
-  private void setObject(String name, Object value, PreparedStatement ps) throws SQLException {
-    List<Integer> indexes = getIndexes(name);
-    for (Integer index : indexes) {
-      ps.setObject(index, value);
-    }
-  }
+        case UPSERT:
+          answer = upsertSQL(builder);
+          break;
 
+        case UPDATE:
+          answer = updateSQL(builder);
+          break;
 
-  private void setString(String name, String value, PreparedStatement ps) throws SQLException {
-    List<Integer> indexes = getIndexes(name);
-    for (Integer index : indexes) {
-      ps.setString(index, value);
-    }
-  }
+        case DELETE:
+          answer = deleteSQL(builder);
+          break;
 
+        default:
+          answer = null;
+      }
 
-  private void setInt(String name, int value, PreparedStatement ps) throws SQLException {
-    List<Integer> indexes = getIndexes(name);
-    for (Integer index : indexes) {
-      ps.setInt(index, value);
+      return answer;
     }
-  }
-
 
-  private void setLong(String name, long value, PreparedStatement ps) throws SQLException {
-    List<Integer> indexes = getIndexes(name);
-    for (Integer index : indexes) {
-      ps.setLong(index, value);
-    }
   }
 
-  private void setTimestamp(String name, Timestamp value, PreparedStatement ps) throws SQLException {
-    List<Integer> indexes = getIndexes(name);
-    for (Integer index : indexes) {
-      ps.setTimestamp(index, value);
-    }
+  Map<String, Object> collectValues() {
+    return collectValues("");
   }
 
-  private void setDate(String name, Date value, PreparedStatement ps) throws SQLException {
-    List<Integer> indexes = getIndexes(name);
-    for (Integer index : indexes) {
-      if (value instanceof java.sql.Date) {
-        ps.setDate(index, (java.sql.Date) value);
-      } else {
-        ps.setTimestamp(index, new Timestamp(value.getTime()));
-      }
+  private Map<String, Object> collectValues(String scope) {
+    Map<String, Object> values = new HashMap<>(valueMap);
+    if (sql().limitValue != null) {
+      values.put(scope + LIMIT_PARAMETER, sql().limitValue);
+    }
+    if (sql().offsetValue != null) {
+      values.put(scope + OFFSET_PARAMETER, sql().offsetValue);
     }
+    fillSqlValuesFromWithTables(values, scope);
+    return values;
   }
 
-  private void setEnum(String name, Enum value, PreparedStatement ps) throws SQLException {
-    List<Integer> indexes = getIndexes(name);
-    for (Integer index : indexes) {
-      ps.setString(index, value.name());
+  private void fillSqlValuesFromWithTables(Map<String, Object> values, String scope) {
+    for (Entry<String, T> with : withMap.entrySet()) {
+      AbstractSQL<?> withSql = (AbstractSQL<?>) with.getValue();
+      String withScope = scope + with.getKey() + ".";
+      for (Entry<String, Object> valueEntry : withSql.collectValues(withScope).entrySet()) {
+        if (values.get(valueEntry.getKey()) != null) {
+          throw new IllegalArgumentException("Value for key \"" + valueEntry.getKey() + "\" is set more than once");
+        }
+        values.put(valueEntry.getKey(), valueEntry.getValue());
+      }
     }
   }
 
   public T setValue(String name, Object value) {
+    checkMutable();
     if (valueMap.get(name) != null) {
       throw new IllegalArgumentException("Value for key \"" + name + "\" is set more than once");
     }
+    if (valuesShared) {
+      valueMap = new HashMap<>(valueMap);
+      valuesShared = false;
+    }
     valueMap.put(name, value);
     return getSelf();
   }
 
+  public BoundQuery bind() {
+    Map<String, Object> values = collectValues();
+    return compileBuild(expansions(values)).bind(values);
+  }
+
+  public BoundQuery bind(TemplateCache cache) {
+    Map<String, Object> values = collectValues();
+    return compile(cache, expansions(values)).bind(values);
+  }
+
   public PreparedStatement applyParameter(PreparedStatement ps) throws SQLException {
-    for (Entry<String, Object> entry : valueMap.entrySet()) {
-      String key = entry.getKey();
-      Object value = entry.getValue();
-
-      if (value instanceof Integer) {
-        setInt(key, (Integer) value, ps);
-      } else if (value instanceof String) {
-        setString(key, (String) value, ps);
-      } else if (value instanceof Timestamp) {
-        setTimestamp(key, (Timestamp) value, ps);
-      } else if (value instanceof Long) {
-        setLong(key, (Long) value, ps);
-      } else if (value instanceof java.sql.Date) {
-        setDate(key, (java.sql.Date) value, ps);
-      } else if (value instanceof Date) {
-        setDate(key, (Date) value, ps);
-      } else if (value instanceof Enum) {
-        setEnum(key, (Enum) value, ps);
-      } else {
-        setObject(key, value, ps);
-      }
-    }
-    return ps;
+    return bind().applyTo(ps);
   }
 
 }
@@ -0,0 +1,295 @@
+package com.github.gitsby.sql;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+/**
+ * Runs queries against one {@link DataSource} in the background and returns
+ * {@link CompletableFuture}s, so independent queries of one request run side by side. At most
+ * {@code maxConcurrency} queries hold a connection at a time, the rest wait for a permit; create one
+ * executor per data source and size the limit below the pool size.
+ * <p>
+ * Blocking JDBC calls run on virtual threads when the runtime has them (Java 21), otherwise on a
+ * pool of {@code maxConcurrency} daemon threads. Cancelling a future or passing its deadline cancels the running
+ * statement with {@link java.sql.Statement#cancel()}; a query that has not started yet is skipped.
+ */
+public final class AsyncExecutor implements AutoCloseable {
+
+  public static final int DEFAULT_MAX_CONCURRENCY = 10;
+
+  @FunctionalInterface
+  public interface ConnectionWork<R> {
+
+    R run(Connection connection, Statements statements) throws SQLException;
+
+  }
+
+  /**
+   * Prepares the statements of one task, so that they can be cancelled with it.
+   */
+  public interface Statements {
+
+    PreparedStatement prepare(Connection connection, String sql) throws SQLException;
+
+  }
+
+  private final DataSource dataSource;
+  private final int maxConcurrency;
+  private final Semaphore permits;
+  private final ExecutorService executor;
+  private final boolean ownsExecutor;
+
+  public AsyncExecutor(DataSource dataSource) {
+    this(dataSource, DEFAULT_MAX_CONCURRENCY);
+  }
+
+  public AsyncExecutor(DataSource dataSource, int maxConcurrency) {
+    this(dataSource, maxConcurrency, null, true);
+  }
+
+  public AsyncExecutor(DataSource dataSource, int maxConcurrency, ExecutorService executor) {
+    this(dataSource, maxConcurrency, executor, false);
+  }
+
+  private AsyncExecutor(DataSource dataSource, int maxConcurrency, ExecutorService executor,
+                        boolean ownsExecutor) {
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException("Max concurrency must be positive: " + maxConcurrency);
+    }
+    this.dataSource = dataSource;
+    this.maxConcurrency = maxConcurrency;
+    this.permits = new Semaphore(maxConcurrency, true);
+    this.executor = ownsExecutor ? defaultExecutor(maxConcurrency) : executor;
+    this.ownsExecutor = ownsExecutor;
+  }
+
+  static ExecutorService defaultExecutor(int maxConcurrency) {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return platformExecutor(maxConcurrency);
+    }
+  }
+
+  // one thread per permit, queued tasks wait in the queue instead of on a thread of their own
+  static ExecutorService platformExecutor(int maxConcurrency) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "sql-async");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  public <R> CompletableFuture<List<R>> query(BoundQuery bound, RowMapper<R> mapper) {
+    return query(bound, mapper, null);
+  }
+
+  /**
+   * @param timeout deadline counted from submission, null for none
+   */
+  public <R> CompletableFuture<List<R>> query(BoundQuery bound, RowMapper<R> mapper,
+                                              Duration timeout) {
+    return submit((connection, statements) -> {
+      PreparedStatement ps = statements.prepare(connection, bound.getQuery().getSql());
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        event.finish(QueryEvent.EXECUTE, bound.getQuery());
+        List<R> rows = new ArrayList<>();
+        RowMapper<R> rowMapper = mapper.forResultSet(rs);
+        while (rs.next()) {
+          rows.add(rowMapper.map(rs));
+        }
+        return rows;
+      }
+    }, timeout);
+  }
+
+  public CompletableFuture<Integer> update(BoundQuery bound) {
+    return update(bound, null);
+  }
+
+  public CompletableFuture<Integer> update(BoundQuery bound, Duration timeout) {
+    return submit((connection, statements) -> {
+      PreparedStatement ps = statements.prepare(connection, bound.getQuery().getSql());
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      int updateCount = ps.executeUpdate();
+      event.finish(QueryEvent.EXECUTE, bound.getQuery());
+      return updateCount;
+    }, timeout);
+  }
+
+  /**
+   * Runs {@code work} with a connection of its own once a permit is free. Statements created
+   * through {@link Statements} are closed afterwards and cancelled with the future.
+   */
+  public <R> CompletableFuture<R> submit(ConnectionWork<R> work, Duration timeout) {
+    Task<R> task = new Task<>(work, timeout);
+    CompletableFuture<R> future = task.future;
+    if (timeout != null) {
+      future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    future.whenComplete((result, failure) -> {
+      if (failure != null) {
+        task.cancel();
+      }
+    });
+    executor.execute(task);
+    return future;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public int getInFlight() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  /**
+   * Stops accepting work, running queries complete. An executor passed in by the caller is left
+   * running.
+   */
+  @Override
+  public void close() {
+    if (ownsExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  private final class Task<R> implements Runnable, Statements {
+
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+    private final ConnectionWork<R> work;
+    private final Duration timeout;
+    private final List<PreparedStatement> statements = new ArrayList<>(1);
+    private boolean cancelled;
+
+    private Task(ConnectionWork<R> work, Duration timeout) {
+      this.work = work;
+      this.timeout = timeout;
+    }
+
+    @Override
+    public void run() {
+      if (future.isDone()) {
+        return;
+      }
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        future.completeExceptionally(e);
+        return;
+      }
+
+      R result = null;
+      Throwable failure = null;
+      try {
+        if (future.isDone()) {
+          return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+          // getting a connection may take longer than the deadline
+          if (future.isDone()) {
+            return;
+          }
+          try {
+            result = work.run(connection, this);
+          } finally {
+            closeStatements();
+          }
+        }
+      } catch (Throwable e) {
+        failure = e;
+      } finally {
+        permits.release();
+      }
+      // completed after the connection and permit are given back, so dependent stages can reuse them
+      if (failure != null) {
+        future.completeExceptionally(failure);
+      } else {
+        future.complete(result);
+      }
+    }
+
+    @Override
+    public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+      PreparedStatement ps = connection.prepareStatement(sql);
+      if (timeout != null) {
+        // the server side backstop of the deadline, whole seconds only
+        ps.setQueryTimeout((int) Math.max(1, (timeout.toMillis() + 999) / 1000));
+      }
+      synchronized (this) {
+        if (!cancelled) {
+          statements.add(ps);
+          return ps;
+        }
+      }
+      // cancelling a statement that has not started does nothing, it must not run at all
+      ps.close();
+      throw new CancellationException("Query was cancelled or passed its deadline");
+    }
+
+    private void cancel() {
+      List<PreparedStatement> running;
+      synchronized (this) {
+        cancelled = true;
+        running = new ArrayList<>(statements);
+      }
+      for (PreparedStatement ps : running) {
+        try {
+          ps.cancel();
+        } catch (SQLException e) {
+          // closed or finished meanwhile
+        }
+      }
+    }
+
+    private void closeStatements() throws SQLException {
+      List<PreparedStatement> open;
+      synchronized (this) {
+        open = new ArrayList<>(statements);
+        statements.clear();
+      }
+      SQLException failure = null;
+      for (PreparedStatement ps : open) {
+        try {
+          ps.close();
+        } catch (SQLException e) {
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,138 @@
+package com.github.gitsby.sql;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Stream;
+
+/**
+ * Executes one {@link CompiledQuery} for many value rows through JDBC batching. Rows are bound
+ * through the precomputed parameter index and sent with {@link PreparedStatement#executeBatch()}
+ * every {@link #batchSize(int)} rows.
+ */
+public final class Batch {
+
+  public static final int DEFAULT_BATCH_SIZE = 500;
+
+  @FunctionalInterface
+  public interface RowBinder<R> {
+
+    void bind(R row, BoundQuery bound);
+
+  }
+
+  private final CompiledQuery query;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private boolean continueOnFailure;
+
+  public Batch(CompiledQuery query) {
+    this.query = query;
+  }
+
+  public Batch batchSize(int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  public Batch continueOnFailure(boolean continueOnFailure) {
+    this.continueOnFailure = continueOnFailure;
+    return this;
+  }
+
+  public BatchResult execute(Connection connection, Iterable<? extends Map<String, ?>> rows)
+      throws SQLException {
+    return execute(connection, rows.iterator(), Batch::bindMap);
+  }
+
+  public BatchResult execute(Connection connection, Stream<? extends Map<String, ?>> rows)
+      throws SQLException {
+    return execute(connection, rows.iterator(), Batch::bindMap);
+  }
+
+  public <R> BatchResult execute(Connection connection, Iterable<R> rows, RowBinder<R> binder)
+      throws SQLException {
+    return execute(connection, rows.iterator(), binder);
+  }
+
+  public <R> BatchResult execute(Connection connection, Iterator<R> rows, RowBinder<R> binder)
+      throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement(query.getSql())) {
+      return execute(ps, rows, binder);
+    }
+  }
+
+  <R> BatchResult execute(PreparedStatement ps, Iterator<R> rows, RowBinder<R> binder)
+      throws SQLException {
+    int[] updateCounts = new int[16];
+    int rowCount = 0;
+    List<BatchResult.Failure> failures = new ArrayList<>();
+
+    BoundQuery bound = query.bind();
+    int pending = 0;
+
+    while (rows.hasNext()) {
+      binder.bind(rows.next(), bound.clear());
+      bound.applyTo(ps);
+      ps.addBatch();
+      pending++;
+
+      if (pending == batchSize || !rows.hasNext()) {
+        if (rowCount + pending > updateCounts.length) {
+          updateCounts = Arrays.copyOf(updateCounts, Math.max(updateCounts.length * 2,
+                                                              rowCount + pending));
+        }
+        boolean failed = flush(ps, query, updateCounts, rowCount, pending, failures);
+        rowCount += pending;
+        pending = 0;
+
+        if (failed && !continueOnFailure) {
+          break;
+        }
+      }
+    }
+
+    return new BatchResult(Arrays.copyOf(updateCounts, rowCount), failures);
+  }
+
+  private static boolean flush(PreparedStatement ps, CompiledQuery query, int[] updateCounts,
+                               int first, int count, List<BatchResult.Failure> failures)
+      throws SQLException {
+    try {
+      QueryEvent event = QueryEvent.start();
+      int[] counts = ps.executeBatch();
+      event.finish(QueryEvent.EXECUTE, query);
+      System.arraycopy(counts, 0, updateCounts, first, count);
+      return false;
+    } catch (BatchUpdateException e) {
+      // Drivers either report every row of the batch or stop at the first failed one
+      int[] counts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+      for (int i = 0; i < count; i++) {
+        int updateCount = i < counts.length ? counts[i] : Statement.EXECUTE_FAILED;
+        updateCounts[first + i] = updateCount;
+        if (updateCount == Statement.EXECUTE_FAILED) {
+          failures.add(new BatchResult.Failure(first + i, e));
+        }
+      }
+      ps.clearBatch();
+      return true;
+    }
+  }
+
+  private static void bindMap(Map<String, ?> row, BoundQuery bound) {
+    for (Entry<String, ?> entry : row.entrySet()) {
+      bound.set(entry.getKey(), entry.getValue());
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+package com.github.gitsby.sql;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link Batch#execute}: the update count of every executed row in input order and the
+ * rows that failed. Rows whose count is {@link Statement#EXECUTE_FAILED} have a failure entry.
+ */
+public final class BatchResult {
+
+  private final int[] updateCounts;
+  private final List<Failure> failures;
+
+  BatchResult(int[] updateCounts, List<Failure> failures) {
+    this.updateCounts = updateCounts;
+    this.failures = Collections.unmodifiableList(failures);
+  }
+
+  public int getRowCount() {
+    return updateCounts.length;
+  }
+
+  public int getUpdateCount(int row) {
+    return updateCounts[row];
+  }
+
+  public int[] getUpdateCounts() {
+    return updateCounts.clone();
+  }
+
+  public boolean isSuccessful() {
+    return failures.isEmpty();
+  }
+
+  public List<Failure> getFailures() {
+    return failures;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchResult{rows=" + updateCounts.length + ", failures=" + failures
+        + ", updateCounts=" + Arrays.toString(updateCounts) + "}";
+  }
+
+  public static final class Failure {
+
+    private final int row;
+    private final SQLException exception;
+
+    Failure(int row, SQLException exception) {
+      this.row = row;
+      this.exception = exception;
+    }
+
+    public int getRow() {
+      return row;
+    }
+
+    public SQLException getException() {
+      return exception;
+    }
+
+    @Override
+    public String toString() {
+      return "Failure{row=" + row + ", exception=" + exception + "}";
+    }
+
+  }
+
+}
@@ -0,0 +1,231 @@
+package com.github.gitsby.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Values for one execution of a {@link CompiledQuery}, stored by parameter id. Look the id up once
+ * with {@link CompiledQuery#getParameterId(String)} to set values without hashing, ints and longs
+ * set through {@link #setInt(int, int)} and {@link #setLong(int, long)} are never boxed. Every
+ * parameter must be set, or null, before {@link #applyTo(PreparedStatement)}.
+ */
+public final class BoundQuery {
+
+  private static final byte UNSET = 0;
+  private static final byte OBJECT = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+
+  private final CompiledQuery query;
+  private final byte[] kinds;
+  private final Object[] values;
+  private final long[] primitives;
+
+  BoundQuery(CompiledQuery query) {
+    int size = query.getIndex().size();
+    this.query = query;
+    this.kinds = new byte[size];
+    this.values = new Object[size];
+    this.primitives = new long[size];
+  }
+
+  public CompiledQuery getQuery() {
+    return query;
+  }
+
+  public BoundQuery set(String name, Object value) {
+    return set(query.getParameterId(name), value);
+  }
+
+  public BoundQuery set(int id, Object value) {
+    kinds[id] = OBJECT;
+    values[id] = value;
+    return this;
+  }
+
+  public BoundQuery setInt(String name, int value) {
+    return setInt(query.getParameterId(name), value);
+  }
+
+  public BoundQuery setInt(int id, int value) {
+    kinds[id] = INT;
+    values[id] = null;
+    primitives[id] = value;
+    return this;
+  }
+
+  public BoundQuery setLong(String name, long value) {
+    return setLong(query.getParameterId(name), value);
+  }
+
+  public BoundQuery setLong(int id, long value) {
+    kinds[id] = LONG;
+    values[id] = null;
+    primitives[id] = value;
+    return this;
+  }
+
+  public BoundQuery clear() {
+    for (int id = 0; id < kinds.length; id++) {
+      kinds[id] = UNSET;
+      values[id] = null;
+    }
+    return this;
+  }
+
+  /**
+   * Snapshot of the SQL text and the values set so far that is equal for equal executions, for use
+   * as a map key. Collections are copied, other values are kept as they are and must not change.
+   */
+  Key key() {
+    if (query.template() == null) {
+      throw new IllegalStateException("Query compiled with compileTo has no SQL text to key on");
+    }
+    Object[] snapshot = new Object[kinds.length];
+    for (int id = 0; id < kinds.length; id++) {
+      switch (kinds[id]) {
+        case INT:
+          snapshot[id] = (int) primitives[id];
+          break;
+        case LONG:
+          snapshot[id] = primitives[id];
+          break;
+        case OBJECT:
+          snapshot[id] = values[id] instanceof Collection
+              ? new ArrayList<>((Collection<?>) values[id]) : values[id];
+          break;
+        default:
+          break;
+      }
+    }
+    return new Key(query.getSql(), kinds.clone(), snapshot);
+  }
+
+  public PreparedStatement applyTo(PreparedStatement ps) throws SQLException {
+    QueryEvent event = QueryEvent.start();
+    QueryMetrics metrics = Instrumentation.metrics;
+    if (metrics == QueryMetrics.NOOP) {
+      apply(ps);
+    } else {
+      long start = System.nanoTime();
+      apply(ps);
+      metrics.applied(query.template(), System.nanoTime() - start, query.getPlaceholderCount());
+    }
+    event.finish(QueryEvent.APPLY, query);
+    return ps;
+  }
+
+  private PreparedStatement apply(PreparedStatement ps) throws SQLException {
+    ParameterIndex index = query.getIndex();
+
+    for (int id = 0; id < kinds.length; id++) {
+      int start = index.start(id);
+      int end = index.end(id);
+
+      switch (kinds[id]) {
+        case INT:
+          int intValue = (int) primitives[id];
+          for (int i = start; i < end; i++) {
+            ps.setInt(index.position(i), intValue);
+          }
+          break;
+
+        case LONG:
+          long longValue = primitives[id];
+          for (int i = start; i < end; i++) {
+            ps.setLong(index.position(i), longValue);
+          }
+          break;
+
+        case OBJECT:
+          Object value = values[id];
+          int width = index.width(id);
+          if (width > 0) {
+            applyElements(ps, index, id, width, value);
+            break;
+          }
+          ParameterBinder binder = query.binder(id, value);
+          for (int i = start; i < end; i++) {
+            binder.bind(ps, index.position(i), value);
+          }
+          break;
+
+        default:
+          // a reused statement would silently keep the value of the previous execution
+          throw new IllegalStateException("Parameter " + index.name(id) + " is not set");
+      }
+    }
+    return ps;
+  }
+
+  // Lists shorter than the expanded width repeat their last element
+  private void applyElements(PreparedStatement ps, ParameterIndex index, int id, int width,
+                             Object value) throws SQLException {
+    Object[] elements = value instanceof Collection
+        ? ((Collection<?>) value).toArray() : new Object[]{value};
+    if (elements.length == 0) {
+      // IN (NULL) would match nothing, as expected, but so would NOT IN (NULL)
+      throw new IllegalArgumentException(
+          "Parameter " + index.name(id)
+              + " is an empty collection, leave out its condition instead");
+    }
+    if (elements.length > width) {
+      throw new IllegalArgumentException(
+          "Parameter " + index.name(id) + " was compiled for at most " + width
+              + " values but got " + elements.length);
+    }
+
+    int start = index.start(id);
+    for (int i = start, end = index.end(id); i < end; i++) {
+      Object element = elements[Math.min((i - start) % width, elements.length - 1)];
+      query.binder(id, element).bind(ps, index.position(i), element);
+    }
+  }
+
+  static final class Key {
+
+    private final String sql;
+    private final byte[] kinds;
+    private final Object[] values;
+    private final int hash;
+
+    private Key(String sql, byte[] kinds, Object[] values) {
+      this.sql = sql;
+      this.kinds = kinds;
+      this.values = values;
+      this.hash = 31 * (31 * sql.hashCode() + Arrays.hashCode(kinds)) + Arrays.deepHashCode(values);
+    }
+
+    String getSql() {
+      return sql;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return hash == key.hash && sql.equals(key.sql) && Arrays.equals(kinds, key.kinds)
+          && Arrays.deepEquals(values, key.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public String toString() {
+      return sql + " " + Arrays.deepToString(values);
+    }
+
+  }
+
+}
@@ -0,0 +1,147 @@
+package com.github.gitsby.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Runs an UPDATE or DELETE for a large key set in bounded chunks instead of one huge statement.
+ * Each chunk adds {@code keyColumn IN (...)} to a fresh statement from the supplier, ANDed with its
+ * own where clauses in parentheses. The last chunk is padded by repeating its last key, so all
+ * chunks of one call share one SQL text.
+ */
+public final class ChunkedDml {
+
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private static final String KEY_PARAMETER = "chunkKey";
+
+  private final Supplier<SQL> statement;
+  private final String keyColumn;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private boolean commitEachChunk;
+
+  public ChunkedDml(Supplier<SQL> statement, String keyColumn) {
+    this.statement = statement;
+    this.keyColumn = keyColumn;
+  }
+
+  public ChunkedDml chunkSize(int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * Commit after every chunk when the connection is not in auto-commit mode, so locks taken by one
+   * chunk are released before the next one starts.
+   */
+  public ChunkedDml commitEachChunk(boolean commitEachChunk) {
+    this.commitEachChunk = commitEachChunk;
+    return this;
+  }
+
+  BoundQuery bind(int size) {
+    SQL sql = statement.get();
+
+    StringBuilder in = new StringBuilder(keyColumn).append(" IN (");
+    for (int i = 0; i < size; i++) {
+      if (i > 0) {
+        in.append(", ");
+      }
+      in.append(':').append(KEY_PARAMETER).append(i);
+    }
+    // the key set must bound every row the statement touches, whatever its own where says
+    sql.groupWhere().where(in.append(')').toString());
+
+    return sql.bind();
+  }
+
+  /**
+   * @return total update count
+   */
+  public int execute(Connection connection, Collection<?> keys) throws SQLException {
+    int updateCount = 0;
+    if (keys.isEmpty()) {
+      return updateCount;
+    }
+
+    int size = Math.min(chunkSize, keys.size());
+    BoundQuery bound = bind(size);
+    int[] keyIds = keyIds(bound.getQuery(), size);
+    try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql())) {
+      for (Iterator<?> iterator = keys.iterator(); iterator.hasNext(); ) {
+        bindChunk(bound, keyIds, iterator).applyTo(ps);
+        QueryEvent event = QueryEvent.start();
+        updateCount += ps.executeUpdate();
+        event.finish(QueryEvent.EXECUTE, bound.getQuery());
+        commit(connection);
+      }
+    }
+    return updateCount;
+  }
+
+  /**
+   * Executes a statement with a RETURNING clause and maps the returned rows of all chunks.
+   */
+  public <R> List<R> executeReturning(Connection connection, Collection<?> keys,
+                                      RowMapper<R> mapper) throws SQLException {
+    List<R> result = new ArrayList<>();
+    if (keys.isEmpty()) {
+      return result;
+    }
+
+    int size = Math.min(chunkSize, keys.size());
+    BoundQuery bound = bind(size);
+    int[] keyIds = keyIds(bound.getQuery(), size);
+    try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql())) {
+      for (Iterator<?> iterator = keys.iterator(); iterator.hasNext(); ) {
+        bindChunk(bound, keyIds, iterator).applyTo(ps);
+        QueryEvent event = QueryEvent.start();
+        try (ResultSet rs = ps.executeQuery()) {
+          event.finish(QueryEvent.EXECUTE, bound.getQuery());
+          RowMapper<R> rowMapper = mapper.forResultSet(rs);
+          while (rs.next()) {
+            result.add(rowMapper.map(rs));
+          }
+        }
+        commit(connection);
+      }
+    }
+    return result;
+  }
+
+  private static int[] keyIds(CompiledQuery query, int size) {
+    int[] keyIds = new int[size];
+    for (int i = 0; i < size; i++) {
+      keyIds[i] = query.getParameterId(KEY_PARAMETER + i);
+    }
+    return keyIds;
+  }
+
+  private static BoundQuery bindChunk(BoundQuery bound, int[] keyIds, Iterator<?> keys) {
+    Object key = null;
+    for (int keyId : keyIds) {
+      if (keys.hasNext()) {
+        key = keys.next();
+      }
+      bound.set(keyId, key);
+    }
+    return bound;
+  }
+
+  private void commit(Connection connection) throws SQLException {
+    if (commitEachChunk && !connection.getAutoCommit()) {
+      connection.commit();
+    }
+  }
+
+}
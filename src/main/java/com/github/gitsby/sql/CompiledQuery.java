@@ -0,0 +1,143 @@
+package com.github.gitsby.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Result of {@link SQL#compile()}: the final SQL text and the name to placeholder positions
+ * table. Instances are immutable, so one compiled query can be shared between threads and bound
+ * with different values any number of times.
+ */
+public final class CompiledQuery {
+
+  private final String sql;
+  private final ParameterIndex index;
+  private final Binding[] plan;
+  private String fingerprint;
+
+  CompiledQuery(String sql, ParameterIndex index) {
+    this(sql, index, new Binding[index.size()]);
+  }
+
+  private CompiledQuery(String sql, ParameterIndex index, Binding[] plan) {
+    this.sql = sql;
+    this.index = index;
+    this.plan = plan;
+  }
+
+  public String getSql() {
+    if (sql == null) {
+      throw new IllegalStateException("SQL text was written by SQL.compileTo(Appendable)");
+    }
+    return sql;
+  }
+
+  public List<String> getParameterNames() {
+    return index.names();
+  }
+
+  public int[] getIndexes(String name) {
+    return index.positions(getParameterId(name));
+  }
+
+  public int getPlaceholderCount() {
+    return index.placeholderCount();
+  }
+
+  public int getParameterId(String name) {
+    int id = index.id(name);
+    if (id < 0) {
+      throw new IllegalArgumentException("Parameter not found: " + name);
+    }
+    return id;
+  }
+
+  /**
+   * Stable 64 bit hash of the SQL text in hex, short enough to log and to correlate events of one
+   * template. A query compiled with {@link SQL#compileTo(Appendable)} is hashed on its parameter
+   * names instead.
+   */
+  public String getFingerprint() {
+    String fingerprint = this.fingerprint;
+    if (fingerprint == null) {
+      // FNV-1a, racing threads compute the same value
+      long hash = 0xcbf29ce484222325L;
+      CharSequence text = sql != null ? sql : String.join(",", index.names());
+      for (int i = 0, n = text.length(); i < n; i++) {
+        hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+      }
+      fingerprint = String.format("%016x", hash);
+      this.fingerprint = fingerprint;
+    }
+    return fingerprint;
+  }
+
+  // SQL text, or null when it was streamed by SQL.compileTo(Appendable)
+  String template() {
+    return sql;
+  }
+
+  ParameterIndex getIndex() {
+    return index;
+  }
+
+  public CompiledQuery declare(String name, Class<?> type) {
+    Class<?> valueType = type == int.class ? Integer.class : type == long.class ? Long.class : type;
+    Binding[] declared = plan.clone();
+    declared[getParameterId(name)] = new Binding(valueType, ParameterBinder.forType(type));
+    return new CompiledQuery(sql, index, declared);
+  }
+
+  public BoundQuery bind() {
+    return new BoundQuery(this);
+  }
+
+  public BoundQuery bind(Map<String, ?> values) {
+    BoundQuery bound = new BoundQuery(this);
+    for (Entry<String, ?> entry : values.entrySet()) {
+      bound.set(entry.getKey(), entry.getValue());
+    }
+    return bound;
+  }
+
+  public PreparedStatement applyParameter(PreparedStatement ps, Map<String, ?> values)
+      throws SQLException {
+    return bind(values).applyTo(ps);
+  }
+
+  // The binder of a parameter is picked from its declared or first seen value type and reused
+  // while values keep that exact class. Racing threads may both fill a slot with equal bindings.
+  ParameterBinder binder(int id, Object value) {
+    if (value == null) {
+      return ParameterBinder.OBJECT;
+    }
+    Binding binding = plan[id];
+    if (binding == null) {
+      binding = new Binding(value.getClass(), ParameterBinder.forType(value.getClass()));
+      plan[id] = binding;
+    }
+    return binding.type == value.getClass()
+        ? binding.binder : ParameterBinder.forType(value.getClass());
+  }
+
+  private static final class Binding {
+
+    private final Class<?> type;
+    private final ParameterBinder binder;
+
+    private Binding(Class<?> type, ParameterBinder binder) {
+      this.type = type;
+      this.binder = binder;
+    }
+
+  }
+
+  @Override
+  public String toString() {
+    return sql != null ? sql : "CompiledQuery{placeholders=" + getPlaceholderCount() + "}";
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.github.gitsby.sql;
+
+/**
+ * Database specific parts of the rendered SQL. The built-in dialects are constants of this
+ * interface, other databases can be supported by implementing it.
+ */
+public interface Dialect {
+
+  enum UpsertStyle {
+    /**
+     * {@code INSERT ... ON CONFLICT (target) DO UPDATE SET ...}
+     */
+    ON_CONFLICT,
+    /**
+     * {@code MERGE INTO table USING (VALUES ...) AS EXCLUDED (columns) ON ...}
+     */
+    MERGE
+  }
+
+  enum PlaceholderStyle {
+    /**
+     * {@code ?} at every occurrence, a value is bound once per position
+     */
+    POSITIONAL,
+    /**
+     * {@code $1, $2, ...}: PostgreSQL protocol numbering as used by native and R2DBC drivers, not
+     * by the PostgreSQL JDBC driver
+     */
+    DOLLAR_NUMBERED,
+    /**
+     * {@code ?1, ?2, ...}: indexed JDBC parameters, supported by H2 and SQLite
+     */
+    QUESTION_NUMBERED
+  }
+
+  enum LimitStyle {
+    /**
+     * {@code LIMIT n OFFSET m}
+     */
+    LIMIT_OFFSET,
+    /**
+     * SQL:2008 {@code OFFSET m ROWS FETCH FIRST n ROWS ONLY}
+     */
+    OFFSET_FETCH
+  }
+
+  Dialect DEFAULT = StandardDialect.DEFAULT;
+  Dialect POSTGRESQL = StandardDialect.POSTGRESQL;
+  Dialect H2 = StandardDialect.H2;
+  /**
+   * PostgreSQL with {@code $n} placeholders, for SQL that is executed outside of JDBC.
+   */
+  Dialect POSTGRESQL_NUMBERED = StandardDialect.POSTGRESQL_NUMBERED;
+  /**
+   * Standard SQL:2008 paging with {@code OFFSET ... FETCH FIRST}, as in Oracle, DB2 and SQL Server.
+   */
+  Dialect SQL2008 = StandardDialect.SQL2008;
+
+  UpsertStyle upsertStyle();
+
+  /**
+   * With a numbered style every distinct parameter gets one number, reused at every occurrence,
+   * so its value is bound once however often the SQL refers to it.
+   */
+  default PlaceholderStyle placeholderStyle() {
+    return PlaceholderStyle.POSITIONAL;
+  }
+
+  default LimitStyle limitStyle() {
+    return LimitStyle.LIMIT_OFFSET;
+  }
+
+}
@@ -0,0 +1,222 @@
+package com.github.gitsby.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link QueryMetrics} kept in memory: counters and latency histograms per template, updated
+ * without locks and read on demand through {@link #getTemplates()} or {@link #dump()}.
+ * <p>
+ * At most {@code maxTemplates} templates are tracked, by default {@value #DEFAULT_MAX_TEMPLATES}.
+ * Templates seen after that are counted together under {@link #OTHER}, so SQL with literals or
+ * unbounded IN lists cannot grow the map without limit. Racing threads may add a few templates
+ * beyond the maximum.
+ */
+public final class InMemoryQueryMetrics implements QueryMetrics {
+
+  /**
+   * Template key of queries compiled with {@link SQL#compileTo(Appendable)}.
+   */
+  public static final String STREAMED = "(streamed)";
+
+  /**
+   * Template key of the templates seen once the maximum was reached.
+   */
+  public static final String OTHER = "(other)";
+
+  public static final int DEFAULT_MAX_TEMPLATES = 1000;
+
+  private static final int DUMP_TEMPLATE_LENGTH = 80;
+
+  private final Map<String, TemplateStats> templates = new ConcurrentHashMap<>();
+  private final int maxTemplates;
+
+  public InMemoryQueryMetrics() {
+    this(DEFAULT_MAX_TEMPLATES);
+  }
+
+  public InMemoryQueryMetrics(int maxTemplates) {
+    if (maxTemplates <= 0) {
+      throw new IllegalArgumentException("Max templates must be positive: " + maxTemplates);
+    }
+    this.maxTemplates = maxTemplates;
+  }
+
+  private TemplateStats stats(String template) {
+    String key = template == null ? STREAMED : template;
+    TemplateStats stats = templates.get(key);
+    if (stats != null) {
+      return stats;
+    }
+    if (templates.size() >= maxTemplates) {
+      key = OTHER;
+    }
+    return templates.computeIfAbsent(key, TemplateStats::new);
+  }
+
+  @Override
+  public void compiled(String template, long renderNanos, int sqlLength, int placeholderCount,
+                       int cteCount) {
+    TemplateStats stats = stats(template);
+    stats.render.record(renderNanos);
+    stats.sqlLength = sqlLength;
+    stats.placeholderCount = placeholderCount;
+    stats.cteCount = cteCount;
+  }
+
+  @Override
+  public void applied(String template, long applyNanos, int placeholderCount) {
+    TemplateStats stats = stats(template);
+    stats.apply.record(applyNanos);
+    stats.placeholderCount = placeholderCount;
+  }
+
+  public List<TemplateStats> getTemplates() {
+    return new ArrayList<>(templates.values());
+  }
+
+  public void reset() {
+    templates.clear();
+  }
+
+  /**
+   * One line per template with render and apply latencies in microseconds.
+   */
+  public String dump() {
+    StringBuilder sb = new StringBuilder();
+    for (TemplateStats stats : templates.values()) {
+      String template = stats.template.replaceAll("\\s+", " ");
+      if (template.length() > DUMP_TEMPLATE_LENGTH) {
+        template = template.substring(0, DUMP_TEMPLATE_LENGTH - 3) + "...";
+      }
+      sb.append(template)
+          .append(" | length=").append(stats.sqlLength)
+          .append(" placeholders=").append(stats.placeholderCount)
+          .append(" ctes=").append(stats.cteCount)
+          .append(" | render ").append(stats.render)
+          .append(" | apply ").append(stats.apply)
+          .append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "InMemoryQueryMetrics{templates=" + templates.size() + "}";
+  }
+
+  public static final class TemplateStats {
+
+    private final String template;
+    private final LatencyHistogram render = new LatencyHistogram();
+    private final LatencyHistogram apply = new LatencyHistogram();
+    private volatile int sqlLength;
+    private volatile int placeholderCount;
+    private volatile int cteCount;
+
+    private TemplateStats(String template) {
+      this.template = template;
+    }
+
+    public String getTemplate() {
+      return template;
+    }
+
+    public LatencyHistogram getRender() {
+      return render;
+    }
+
+    public LatencyHistogram getApply() {
+      return apply;
+    }
+
+    public int getSqlLength() {
+      return sqlLength;
+    }
+
+    public int getPlaceholderCount() {
+      return placeholderCount;
+    }
+
+    public int getCteCount() {
+      return cteCount;
+    }
+
+  }
+
+  /**
+   * Latencies in power of two buckets: bucket {@code i} counts values below {@code 2^i}
+   * nanoseconds and at least {@code 2^(i-1)}, so percentiles are exact within a factor of two.
+   */
+  public static final class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+      long value = Math.max(nanos, 0);
+      buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+      count.increment();
+      total.add(value);
+      max.accumulate(value);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getTotalNanos() {
+      return total.sum();
+    }
+
+    public long getMaxNanos() {
+      return max.get();
+    }
+
+    public long getMeanNanos() {
+      long count = getCount();
+      return count == 0 ? 0 : getTotalNanos() / count;
+    }
+
+    /**
+     * @return upper bound of the bucket holding the {@code percentile} (0..100) value
+     */
+    public long getPercentileNanos(double percentile) {
+      long[] counts = new long[buckets.length()];
+      long count = 0;
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = buckets.get(i);
+        count += counts[i];
+      }
+      if (count == 0) {
+        return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(i == 0 ? 0 : (1L << i) - 1, getMaxNanos());
+        }
+      }
+      return getMaxNanos();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                           getCount(), getMeanNanos() / 1e3, getPercentileNanos(50) / 1e3,
+                           getPercentileNanos(99) / 1e3, getMaxNanos() / 1e3);
+    }
+
+  }
+
+}
@@ -0,0 +1,10 @@
+package com.github.gitsby.sql;
+
+final class Instrumentation {
+
+  static volatile QueryMetrics metrics = QueryMetrics.NOOP;
+
+  private Instrumentation() {
+  }
+
+}
@@ -0,0 +1,321 @@
+package com.github.gitsby.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Keyset (seek) pagination over a fixed ordering. Instead of skipping rows with OFFSET, a page
+ * starts right after the last row of the previous page: {@code (a, b) > (:keyset0, :keyset1)}, so
+ * the database can seek in an index on the key columns and every page costs the same.
+ * <p>
+ * The key columns must be non null and unique in combination, usually by ending with the primary
+ * key. Columns are given as {@code "created_at DESC"}, optionally qualified; the value for the
+ * cursor is read from the result column with the unqualified name.
+ */
+public final class Keyset {
+
+  private static final String KEY_PARAMETER = "keyset";
+  private static final byte CURSOR_VERSION = 1;
+
+  private final String[] columns;
+  private final String[] labels;
+  private final boolean[] descending;
+  private final String orderBy;
+  private final int fingerprint;
+
+  public Keyset(String... columns) {
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("No keyset columns");
+    }
+    this.columns = new String[columns.length];
+    this.labels = new String[columns.length];
+    this.descending = new boolean[columns.length];
+
+    for (int i = 0; i < columns.length; i++) {
+      String[] parts = columns[i].trim().split("\\s+");
+      if (parts.length > 2 || parts.length == 2
+          && !parts[1].equalsIgnoreCase("ASC") && !parts[1].equalsIgnoreCase("DESC")) {
+        throw new IllegalArgumentException("Expected column [ASC|DESC]: " + columns[i]);
+      }
+      this.columns[i] = parts[0];
+      this.labels[i] = parts[0].substring(parts[0].lastIndexOf('.') + 1);
+      this.descending[i] = parts.length == 2 && parts[1].equalsIgnoreCase("DESC");
+    }
+
+    StringBuilder orderBy = new StringBuilder();
+    for (int i = 0; i < columns.length; i++) {
+      if (i > 0) {
+        orderBy.append(", ");
+      }
+      orderBy.append(this.columns[i]).append(descending[i] ? " DESC" : " ASC");
+    }
+    this.orderBy = orderBy.toString();
+    this.fingerprint = this.orderBy.toLowerCase(Locale.ROOT).hashCode();
+  }
+
+  /**
+   * Fork of {@code sql} with the ordering and, when {@code cursor} is not null, the predicate that
+   * starts after the row the cursor was taken from. {@code sql} itself is left unchanged, so one
+   * base statement, frozen or not, serves every page.
+   */
+  public SQL apply(SQL sql, String cursor) {
+    SQL page = sql.fork().order_by(orderBy);
+    if (cursor == null) {
+      return page;
+    }
+
+    Object[] values = decode(cursor);
+    page.where(predicate());
+    for (int i = 0; i < values.length; i++) {
+      page.setValue(KEY_PARAMETER + i, values[i]);
+    }
+    return page;
+  }
+
+  String predicate() {
+    boolean mixed = false;
+    for (boolean desc : descending) {
+      mixed |= desc != descending[0];
+    }
+
+    StringBuilder where = new StringBuilder();
+    if (!mixed) {
+      // one row value comparison, which the database can turn into a single index range
+      where.append('(');
+      for (int i = 0; i < columns.length; i++) {
+        where.append(i > 0 ? ", " : "").append(columns[i]);
+      }
+      where.append(descending[0] ? ") < (" : ") > (");
+      for (int i = 0; i < columns.length; i++) {
+        where.append(i > 0 ? ", " : "").append(':').append(KEY_PARAMETER).append(i);
+      }
+      return where.append(')').toString();
+    }
+
+    // a row value comparison has one direction, mixed orderings need the expanded form
+    where.append('(');
+    for (int i = 0; i < columns.length; i++) {
+      where.append(i > 0 ? " OR (" : "(");
+      for (int j = 0; j < i; j++) {
+        where.append(columns[j]).append(" = :").append(KEY_PARAMETER).append(j).append(" AND ");
+      }
+      where.append(columns[i]).append(descending[i] ? " < :" : " > :")
+          .append(KEY_PARAMETER).append(i).append(')');
+    }
+    return where.append(')').toString();
+  }
+
+  /**
+   * Fetches one page of at most {@code pageSize} rows. The statement gets the ordering, the seek
+   * predicate and {@code LIMIT pageSize + 1}; the extra row only tells whether there is a next
+   * page and is not mapped.
+   */
+  public <R> Page<R> page(Connection connection, SQL sql, String cursor, int pageSize,
+                          RowMapper<R> mapper) throws SQLException {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+    }
+    BoundQuery bound = apply(sql, cursor).limit(pageSize + 1).bind();
+    List<R> rows = new ArrayList<>(Math.min(pageSize, 1024));
+    Object[] last = new Object[columns.length];
+    boolean more = false;
+    try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql())) {
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        event.finish(QueryEvent.EXECUTE, bound.getQuery());
+        RowMapper<R> rowMapper = mapper.forResultSet(rs);
+        while (rs.next()) {
+          if (rows.size() == pageSize) {
+            more = true;
+            break;
+          }
+          rows.add(rowMapper.map(rs));
+          for (int i = 0; i < labels.length; i++) {
+            last[i] = rs.getObject(labels[i]);
+          }
+        }
+      }
+    }
+
+    return new Page<>(rows, more ? cursor(last) : null);
+  }
+
+  /**
+   * Opaque cursor for the row with the given key values, in column order.
+   */
+  public String cursor(Object... values) {
+    if (values.length != columns.length) {
+      throw new IllegalArgumentException(
+          "Expected " + columns.length + " key values but got " + values.length);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(CURSOR_VERSION);
+      out.writeInt(fingerprint);
+      for (Object value : values) {
+        write(out, value);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+
+  Object[] decode(String cursor) {
+    byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(cursor);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+    }
+
+    Object[] values = new Object[columns.length];
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      if (in.readByte() != CURSOR_VERSION || in.readInt() != fingerprint) {
+        throw new IllegalArgumentException("Cursor does not belong to keyset " + orderBy);
+      }
+      for (int i = 0; i < values.length; i++) {
+        values[i] = read(in);
+      }
+      if (in.available() > 0) {
+        throw new IOException("Trailing bytes");
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+    }
+    return values;
+  }
+
+  private static void write(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      throw new IllegalArgumentException("Keyset column values must not be null");
+    } else if (value instanceof Integer) {
+      out.writeByte('I');
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte('J');
+      out.writeLong((Long) value);
+    } else if (value instanceof String) {
+      out.writeByte('S');
+      out.writeUTF((String) value);
+    } else if (value instanceof BigDecimal) {
+      out.writeByte('N');
+      out.writeUTF(value.toString());
+    } else if (value instanceof BigInteger) {
+      out.writeByte('B');
+      out.writeUTF(value.toString());
+    } else if (value instanceof Double) {
+      out.writeByte('D');
+      out.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte('Z');
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Timestamp) {
+      out.writeByte('T');
+      out.writeLong(((Timestamp) value).getTime());
+      out.writeInt(((Timestamp) value).getNanos());
+    } else if (value instanceof java.sql.Date) {
+      out.writeByte('d');
+      out.writeUTF(value.toString());
+    } else if (value instanceof LocalDate || value instanceof LocalDateTime
+               || value instanceof OffsetDateTime || value instanceof Instant) {
+      out.writeByte(value instanceof LocalDate ? 'l' : value instanceof LocalDateTime ? 't'
+          : value instanceof OffsetDateTime ? 'o' : 'i');
+      out.writeUTF(value.toString());
+    } else if (value instanceof UUID) {
+      out.writeByte('U');
+      out.writeLong(((UUID) value).getMostSignificantBits());
+      out.writeLong(((UUID) value).getLeastSignificantBits());
+    } else {
+      throw new IllegalArgumentException("Unsupported keyset value type: " + value.getClass());
+    }
+  }
+
+  private static Object read(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case 'I':
+        return in.readInt();
+      case 'J':
+        return in.readLong();
+      case 'S':
+        return in.readUTF();
+      case 'N':
+        return new BigDecimal(in.readUTF());
+      case 'B':
+        return new BigInteger(in.readUTF());
+      case 'D':
+        return in.readDouble();
+      case 'Z':
+        return in.readBoolean();
+      case 'T':
+        Timestamp timestamp = new Timestamp(in.readLong());
+        timestamp.setNanos(in.readInt());
+        return timestamp;
+      case 'd':
+        return java.sql.Date.valueOf(in.readUTF());
+      case 'l':
+        return LocalDate.parse(in.readUTF());
+      case 't':
+        return LocalDateTime.parse(in.readUTF());
+      case 'o':
+        return OffsetDateTime.parse(in.readUTF());
+      case 'i':
+        return Instant.parse(in.readUTF());
+      case 'U':
+        return new UUID(in.readLong(), in.readLong());
+      default:
+        throw new IOException("Unknown value type " + type);
+    }
+  }
+
+  public static final class Page<R> {
+
+    private final List<R> rows;
+    private final String nextCursor;
+
+    Page(List<R> rows, String nextCursor) {
+      this.rows = Collections.unmodifiableList(rows);
+      this.nextCursor = nextCursor;
+    }
+
+    public List<R> getRows() {
+      return rows;
+    }
+
+    /**
+     * @return cursor of the last row, or null on the last page
+     */
+    public String getNextCursor() {
+      return nextCursor;
+    }
+
+    public boolean hasNext() {
+      return nextCursor != null;
+    }
+
+  }
+
+}
@@ -0,0 +1,169 @@
+package com.github.gitsby.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multi-row {@code INSERT INTO table (columns) VALUES (...), (...)} split into statements that
+ * stay under a bind parameter limit. Full chunks always have {@link #getRowsPerStatement()} rows
+ * and the remainder is split into power of two sized chunks, so only a handful of distinct SQL
+ * texts ever reach the server. Compiled chunk shapes are cached and the instance can be shared.
+ */
+public final class MultiRowInsert {
+
+  public static final int POSTGRESQL_MAX_PARAMETERS = 65535;
+
+  public static final int DEFAULT_MAX_ROWS = 1000;
+
+  private final String table;
+  private final String[] columns;
+  private final int maxParameters;
+  private final int maxRows;
+  private final int rowsPerStatement;
+  private final Map<Integer, CompiledQuery> shapes = new ConcurrentHashMap<>();
+
+  public MultiRowInsert(String table, String... columns) {
+    this(table, columns, POSTGRESQL_MAX_PARAMETERS, DEFAULT_MAX_ROWS);
+  }
+
+  private MultiRowInsert(String table, String[] columns, int maxParameters, int maxRows) {
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("No columns to insert into " + table);
+    }
+    if (maxParameters < columns.length) {
+      throw new IllegalArgumentException(
+          "Parameter limit " + maxParameters + " is lower than column count " + columns.length);
+    }
+    if (maxRows <= 0) {
+      throw new IllegalArgumentException("Row limit must be positive: " + maxRows);
+    }
+    this.table = table;
+    this.columns = columns.clone();
+    this.maxParameters = maxParameters;
+    this.maxRows = maxRows;
+    this.rowsPerStatement = Math.min(maxRows, maxParameters / columns.length);
+  }
+
+  public MultiRowInsert maxParameters(int maxParameters) {
+    return new MultiRowInsert(table, columns, maxParameters, maxRows);
+  }
+
+  public MultiRowInsert maxRows(int maxRows) {
+    return new MultiRowInsert(table, columns, maxParameters, maxRows);
+  }
+
+  public int getRowsPerStatement() {
+    return rowsPerStatement;
+  }
+
+  public CompiledQuery compile(int rows) {
+    if (rows <= 0 || rows > rowsPerStatement) {
+      throw new IllegalArgumentException(
+          "Row count must be between 1 and " + rowsPerStatement + ": " + rows);
+    }
+    return shapes.computeIfAbsent(rows, this::compileShape);
+  }
+
+  private CompiledQuery compileShape(int rows) {
+    SQL sql = new SQL()
+        .insertInto(table)
+        .columns(String.join(", ", columns));
+
+    StringBuilder row = new StringBuilder();
+    for (int r = 0; r < rows; r++) {
+      row.setLength(0);
+      for (int c = 0; c < columns.length; c++) {
+        if (c > 0) {
+          row.append(", ");
+        }
+        // parameter id of row r, column c is r * columns.length + c
+        row.append(":v").append(r).append('_').append(c);
+      }
+      sql.values(row.toString());
+    }
+
+    return sql.compile();
+  }
+
+  static List<Integer> chunkSizes(int rowCount, int rowsPerStatement) {
+    List<Integer> sizes = new ArrayList<>();
+    int remaining = rowCount;
+    while (remaining >= rowsPerStatement) {
+      sizes.add(rowsPerStatement);
+      remaining -= rowsPerStatement;
+    }
+    while (remaining > 0) {
+      int size = Integer.highestOneBit(remaining);
+      sizes.add(size);
+      remaining -= size;
+    }
+    return sizes;
+  }
+
+  /**
+   * Inserts the rows, every array holds the values in column order. Rows are read lazily and at
+   * most {@link #getRowsPerStatement()} of them are kept in memory at a time.
+   *
+   * @return total update count
+   */
+  public int execute(Connection connection, Iterable<Object[]> rows) throws SQLException {
+    int updateCount = 0;
+    List<Object[]> chunk = new ArrayList<>(Math.min(rowsPerStatement, 1024));
+
+    PreparedStatement full = null;
+    try {
+      for (Object[] row : rows) {
+        if (row.length != columns.length) {
+          throw new IllegalArgumentException(
+              "Expected " + columns.length + " values but got " + row.length);
+        }
+        chunk.add(row);
+
+        if (chunk.size() == rowsPerStatement) {
+          if (full == null) {
+            full = connection.prepareStatement(compile(rowsPerStatement).getSql());
+          }
+          updateCount += execute(full, chunk, 0, rowsPerStatement);
+          chunk.clear();
+        }
+      }
+    } finally {
+      if (full != null) {
+        full.close();
+      }
+    }
+
+    int from = 0;
+    for (int size : chunkSizes(chunk.size(), rowsPerStatement)) {
+      try (PreparedStatement ps = connection.prepareStatement(compile(size).getSql())) {
+        updateCount += execute(ps, chunk, from, size);
+      }
+      from += size;
+    }
+
+    return updateCount;
+  }
+
+  private int execute(PreparedStatement ps, List<Object[]> rows, int from, int size)
+      throws SQLException {
+    BoundQuery bound = compile(size).bind();
+    int id = 0;
+    for (int r = from; r < from + size; r++) {
+      for (Object value : rows.get(r)) {
+        bound.set(id++, value);
+      }
+    }
+
+    bound.applyTo(ps);
+    QueryEvent event = QueryEvent.start();
+    int updateCount = ps.executeUpdate();
+    event.finish(QueryEvent.EXECUTE, bound.getQuery());
+    return updateCount;
+  }
+
+}
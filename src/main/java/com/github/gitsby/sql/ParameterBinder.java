@@ -0,0 +1,91 @@
+package com.github.gitsby.sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+enum ParameterBinder {
+
+  INT {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setInt(index, (Integer) value);
+    }
+  },
+  STRING {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setString(index, (String) value);
+    }
+  },
+  TIMESTAMP {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setTimestamp(index, (Timestamp) value);
+    }
+  },
+  LONG {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setLong(index, (Long) value);
+    }
+  },
+  SQL_DATE {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setDate(index, (java.sql.Date) value);
+    }
+  },
+  DATE {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setTimestamp(index, new Timestamp(((Date) value).getTime()));
+    }
+  },
+  ENUM {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setString(index, ((Enum<?>) value).name());
+    }
+  },
+  ARRAY {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      SqlArray array = (SqlArray) value;
+      ps.setArray(index, ps.getConnection().createArrayOf(array.getTypeName(),
+                                                          array.getElements()));
+    }
+  },
+  OBJECT {
+    @Override
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+      ps.setObject(index, value);
+    }
+  };
+
+  abstract void bind(PreparedStatement ps, int index, Object value) throws SQLException;
+
+  static ParameterBinder forType(Class<?> type) {
+    if (type == Integer.class || type == int.class) {
+      return INT;
+    } else if (type == String.class) {
+      return STRING;
+    } else if (Timestamp.class.isAssignableFrom(type)) {
+      return TIMESTAMP;
+    } else if (type == Long.class || type == long.class) {
+      return LONG;
+    } else if (java.sql.Date.class.isAssignableFrom(type)) {
+      return SQL_DATE;
+    } else if (Date.class.isAssignableFrom(type)) {
+      return DATE;
+    } else if (Enum.class.isAssignableFrom(type)) {
+      return ENUM;
+    } else if (type == SqlArray.class) {
+      return ARRAY;
+    } else {
+      return OBJECT;
+    }
+  }
+
+}
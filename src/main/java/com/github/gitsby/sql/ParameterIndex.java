@@ -0,0 +1,152 @@
+package com.github.gitsby.sql;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Name to placeholder positions table. Every distinct parameter gets an id in order of first
+ * appearance, the positions of parameter {@code id} are
+ * {@code positions[offsets[id]] .. positions[offsets[id + 1] - 1]}, ascending. A parameter with a
+ * non zero width was expanded to that many placeholders for the elements of a collection value,
+ * every occurrence then takes {@code width} consecutive positions. With numbered placeholders a
+ * parameter has its positions only once, however often it occurs.
+ */
+final class ParameterIndex {
+
+  private final String[] names;
+  private final Map<String, Integer> ids;
+  private final int[] widths;
+  private final int[] offsets;
+  private final int[] positions;
+
+  private ParameterIndex(String[] names, Map<String, Integer> ids, int[] widths, int[] offsets,
+                         int[] positions) {
+    this.names = names;
+    this.ids = ids;
+    this.widths = widths;
+    this.offsets = offsets;
+    this.positions = positions;
+  }
+
+  int size() {
+    return names.length;
+  }
+
+  int placeholderCount() {
+    return positions.length;
+  }
+
+  String name(int id) {
+    return names[id];
+  }
+
+  int id(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  List<String> names() {
+    return Collections.unmodifiableList(Arrays.asList(names));
+  }
+
+  int width(int id) {
+    return widths[id];
+  }
+
+  int start(int id) {
+    return offsets[id];
+  }
+
+  int end(int id) {
+    return offsets[id + 1];
+  }
+
+  int position(int i) {
+    return positions[i];
+  }
+
+  int[] positions(int id) {
+    return Arrays.copyOfRange(positions, offsets[id], offsets[id + 1]);
+  }
+
+  static final class Builder {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    // numbered placeholders are allotted once per parameter and reused at every occurrence
+    private final boolean numbered;
+    private String[] names = new String[8];
+    private int[] widths = new int[8];
+    private int[] firsts = new int[8];
+    // parameter id of every placeholder in text order, placeholder n is at index n - 1
+    private int[] placeholders = new int[16];
+    private int placeholderCount;
+
+    Builder() {
+      this(false);
+    }
+
+    Builder(boolean numbered) {
+      this.numbered = numbered;
+    }
+
+    /**
+     * @return number of the first placeholder of this occurrence
+     */
+    int add(String name, int width) {
+      Integer id = ids.get(name);
+      if (id == null) {
+        id = ids.size();
+        if (id == names.length) {
+          names = Arrays.copyOf(names, id * 2);
+          widths = Arrays.copyOf(widths, id * 2);
+          firsts = Arrays.copyOf(firsts, id * 2);
+        }
+        names[id] = name;
+        widths[id] = width;
+        firsts[id] = placeholderCount + 1;
+        ids.put(name, id);
+      } else if (numbered) {
+        return firsts[id];
+      }
+
+      int first = placeholderCount + 1;
+      int count = Math.max(width, 1);
+      if (placeholderCount + count > placeholders.length) {
+        placeholders = Arrays.copyOf(placeholders,
+                                     Math.max(placeholders.length * 2, placeholderCount + count));
+      }
+      for (int k = 0; k < count; k++) {
+        placeholders[placeholderCount++] = id;
+      }
+      return first;
+    }
+
+    ParameterIndex build() {
+      int size = ids.size();
+
+      // counting sort of the placeholders by parameter id keeps positions ascending
+      int[] offsets = new int[size + 1];
+      for (int i = 0; i < placeholderCount; i++) {
+        offsets[placeholders[i] + 1]++;
+      }
+      for (int id = 0; id < size; id++) {
+        offsets[id + 1] += offsets[id];
+      }
+
+      int[] next = Arrays.copyOf(offsets, size);
+      int[] positions = new int[placeholderCount];
+      for (int i = 0; i < placeholderCount; i++) {
+        positions[next[placeholders[i]]++] = i + 1;
+      }
+
+      return new ParameterIndex(Arrays.copyOf(names, size),
+                                Collections.unmodifiableMap(new HashMap<>(ids)),
+                                Arrays.copyOf(widths, size), offsets, positions);
+    }
+
+  }
+
+}
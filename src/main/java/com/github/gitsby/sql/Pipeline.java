@@ -0,0 +1,166 @@
+package com.github.gitsby.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs several independent SELECTs in one round trip. The statements are compiled into one text
+ * with their parameters numbered across all of them, executed once, and the rows are handed back
+ * to the {@link Part} of every statement, mapped by its own mapper.
+ * <p>
+ * The caller picks the {@link Mode}, driver metadata does not tell whether one prepared statement
+ * may hold several statements.
+ */
+public final class Pipeline {
+
+  public static final String PART_COLUMN = "pipeline_part";
+
+  public enum Mode {
+    /**
+     * Separates the statements with semicolons and reads one result set per statement. Needs a
+     * driver that accepts several statements in one prepared statement, MySQL for example only
+     * with {@code allowMultiQueries=true}.
+     */
+    RESULT_SETS,
+    /**
+     * Runs every statement as {@code SELECT q.*, k AS pipeline_part FROM (...) q}, joined by
+     * {@code UNION ALL}, which works everywhere. The result has the column labels of the first
+     * statement, so all statements must have the same select list. The lists are compared as
+     * written, {@code *} over different tables is not caught. The part column comes last so
+     * mappers read their columns at the usual indexes. Rows keep the order the database returns
+     * them in, which for UNION ALL is not guaranteed by the standard.
+     */
+    UNION_ALL
+  }
+
+  private final List<SQL> statements = new ArrayList<>();
+  private final List<Part<?>> parts = new ArrayList<>();
+
+  public <R> Part<R> add(SQL sql, RowMapper<R> mapper) {
+    Part<R> part = new Part<>(mapper);
+    statements.add(sql);
+    parts.add(part);
+    return part;
+  }
+
+  public int size() {
+    return parts.size();
+  }
+
+  public BoundQuery bind(Mode mode) {
+    if (statements.isEmpty()) {
+      throw new IllegalStateException("Nothing to pipeline");
+    }
+    int count = statements.size();
+    String[] separators = new String[count + 1];
+    if (mode == Mode.RESULT_SETS) {
+      separators[0] = "";
+      for (int k = 1; k < count; k++) {
+        separators[k] = ";\n";
+      }
+      separators[count] = "";
+    } else {
+      String selectList = statements.get(0).selectList();
+      for (int k = 1; k < count; k++) {
+        // label based mappers would read every part with the labels of the first
+        if (!statements.get(k).selectList().equals(selectList)) {
+          throw new IllegalStateException(
+              "UNION_ALL needs the same select list in every statement: " + selectList + " and "
+              + statements.get(k).selectList());
+        }
+      }
+      for (int k = 0; k < count; k++) {
+        separators[k] = (k == 0 ? "" : "\n) pipeline_q" + (k - 1) + "\nUNION ALL\n")
+            + "SELECT pipeline_q" + k + ".*, " + k + " AS " + PART_COLUMN + " FROM (\n";
+      }
+      separators[count] = "\n) pipeline_q" + (count - 1);
+    }
+    return AbstractSQL.bindAll(statements, separators);
+  }
+
+  public void execute(Connection connection, Mode mode) throws SQLException {
+    BoundQuery bound = bind(mode);
+    List<List<Object>> rows = new ArrayList<>(parts.size());
+    for (int k = 0; k < parts.size(); k++) {
+      rows.add(new ArrayList<>());
+    }
+
+    try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql())) {
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      if (mode == Mode.RESULT_SETS) {
+        boolean result = ps.execute();
+        event.finish(QueryEvent.EXECUTE, bound.getQuery());
+        int k = 0;
+        while (k < parts.size()) {
+          if (result) {
+            try (ResultSet rs = ps.getResultSet()) {
+              read(rs, parts.get(k), rows.get(k));
+            }
+            k++;
+          } else if (ps.getUpdateCount() == -1) {
+            throw new SQLException(
+                "Expected " + parts.size() + " result sets but the driver returned " + k);
+          }
+          result = ps.getMoreResults();
+        }
+      } else {
+        try (ResultSet rs = ps.executeQuery()) {
+          event.finish(QueryEvent.EXECUTE, bound.getQuery());
+          int partColumn = rs.getMetaData().getColumnCount();
+          RowMapper<?>[] rowMappers = new RowMapper<?>[parts.size()];
+          while (rs.next()) {
+            int k = rs.getInt(partColumn);
+            if (rowMappers[k] == null) {
+              rowMappers[k] = parts.get(k).mapper.forResultSet(rs);
+            }
+            rows.get(k).add(rowMappers[k].map(rs));
+          }
+        }
+      }
+    }
+
+    for (int k = 0; k < parts.size(); k++) {
+      parts.get(k).rows = Collections.unmodifiableList(rows.get(k));
+    }
+  }
+
+  private static void read(ResultSet rs, Part<?> part, List<Object> rows) throws SQLException {
+    RowMapper<?> rowMapper = part.mapper.forResultSet(rs);
+    while (rs.next()) {
+      rows.add(rowMapper.map(rs));
+    }
+  }
+
+  /**
+   * Rows of one pipelined statement, available once the pipeline was executed.
+   */
+  public static final class Part<R> {
+
+    private final RowMapper<R> mapper;
+    private List<?> rows;
+
+    private Part(RowMapper<R> mapper) {
+      this.mapper = mapper;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<R> getRows() {
+      if (rows == null) {
+        throw new IllegalStateException("Pipeline was not executed yet");
+      }
+      return (List<R>) rows;
+    }
+
+    public boolean isDone() {
+      return rows != null;
+    }
+
+  }
+
+}
@@ -0,0 +1,57 @@
+package com.github.gitsby.sql;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for compiling, binding and executing a query. Disabled by default, enable
+ * {@value #NAME} in a recording settings file or with
+ * {@code Recording.enable("com.github.gitsby.sql.Query")}. While disabled JFR leaves the event
+ * uninstrumented, the calls below compile to nothing and the event object is never kept.
+ */
+@Name(QueryEvent.NAME)
+@Label("SQL Query")
+@Category("SQL Builder")
+@Description("Compile, bind or execute phase of a query built with SQL")
+@Enabled(false)
+@StackTrace(false)
+final class QueryEvent extends Event {
+
+  static final String NAME = "com.github.gitsby.sql.Query";
+
+  static final String COMPILE = "compile";
+  static final String APPLY = "apply";
+  static final String EXECUTE = "execute";
+
+  @Label("Template Fingerprint")
+  @Description("CompiledQuery.getFingerprint() of the query")
+  String fingerprint;
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Placeholder Count")
+  int placeholderCount;
+
+  static QueryEvent start() {
+    QueryEvent event = new QueryEvent();
+    event.begin();
+    return event;
+  }
+
+  void finish(String phase, CompiledQuery query) {
+    end();
+    if (shouldCommit()) {
+      this.fingerprint = query.getFingerprint();
+      this.phase = phase;
+      this.placeholderCount = query.getPlaceholderCount();
+      commit();
+    }
+  }
+
+}
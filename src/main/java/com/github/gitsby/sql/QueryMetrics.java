@@ -0,0 +1,39 @@
+package com.github.gitsby.sql;
+
+import java.util.Objects;
+
+/**
+ * Receives timings and sizes of the builder's own work, per query template. The template is the
+ * compiled SQL text, or null for a query compiled with {@link SQL#compileTo(Appendable)}.
+ * <p>
+ * Nothing is measured while {@link #NOOP} is installed, the default. Implementations are called
+ * on the compiling and binding threads and must be thread safe and cheap.
+ */
+public interface QueryMetrics {
+
+  QueryMetrics NOOP = new QueryMetrics() {
+  };
+
+  /**
+   * A query was rendered. Rendering, the {@code :name} rewriting and the parameter index including
+   * CTE parameters all happen in one pass, so {@code renderNanos} covers all of them.
+   */
+  default void compiled(String template, long renderNanos, int sqlLength, int placeholderCount,
+                        int cteCount) {
+  }
+
+  /**
+   * Values were applied to a statement by {@link BoundQuery#applyTo(java.sql.PreparedStatement)}.
+   */
+  default void applied(String template, long applyNanos, int placeholderCount) {
+  }
+
+  static void install(QueryMetrics metrics) {
+    Instrumentation.metrics = Objects.requireNonNull(metrics);
+  }
+
+  static QueryMetrics installed() {
+    return Instrumentation.metrics;
+  }
+
+}
@@ -0,0 +1,148 @@
+package com.github.gitsby.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a query as a lazy {@link Stream} over a forward only, read only cursor. Rows are fetched
+ * from the driver {@link #fetchSize(int)} at a time and mapped one by one as the stream is
+ * consumed, so memory does not grow with the size of the result.
+ * <p>
+ * The statement and result set are closed when the stream is closed, when it runs to the end and
+ * when reading or mapping a row fails. Use the stream in try-with-resources to release them when
+ * it is abandoned early. Some drivers, PostgreSQL among them, only honour the fetch size outside
+ * of auto-commit mode.
+ */
+public final class QueryStream {
+
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  private int fetchSize = DEFAULT_FETCH_SIZE;
+
+  public QueryStream fetchSize(int fetchSize) {
+    if (fetchSize <= 0) {
+      throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+    }
+    this.fetchSize = fetchSize;
+    return this;
+  }
+
+  public <R> Stream<R> stream(Connection connection, SQL sql, RowMapper<R> mapper)
+      throws SQLException {
+    return stream(connection, sql.bind(), mapper);
+  }
+
+  public <R> Stream<R> stream(Connection connection, BoundQuery bound, RowMapper<R> mapper)
+      throws SQLException {
+    PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql(),
+                                                       ResultSet.TYPE_FORWARD_ONLY,
+                                                       ResultSet.CONCUR_READ_ONLY);
+    ResultSet rs;
+    RowMapper<R> rowMapper;
+    try {
+      ps.setFetchSize(fetchSize);
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      rs = ps.executeQuery();
+      event.finish(QueryEvent.EXECUTE, bound.getQuery());
+      rowMapper = mapper.forResultSet(rs);
+    } catch (SQLException | RuntimeException e) {
+      closeAfterFailure(ps, e);
+      throw e;
+    }
+
+    Rows<R> rows = new Rows<>(ps, rs, rowMapper);
+    return StreamSupport.stream(rows, false).onClose(rows::close);
+  }
+
+  private static void closeAfterFailure(PreparedStatement ps, Exception failure) {
+    try {
+      ps.close();
+    } catch (SQLException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  private static final class Rows<R> extends Spliterators.AbstractSpliterator<R> {
+
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final RowMapper<R> mapper;
+    private boolean closed;
+
+    private Rows(PreparedStatement ps, ResultSet rs, RowMapper<R> mapper) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED);
+      this.ps = ps;
+      this.rs = rs;
+      this.mapper = mapper;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+      if (closed) {
+        return false;
+      }
+
+      R row;
+      try {
+        if (!rs.next()) {
+          close();
+          return false;
+        }
+        row = mapper.map(rs);
+      } catch (SQLException e) {
+        UncheckedSQLException failure = new UncheckedSQLException(e);
+        closeAfterFailure(failure);
+        throw failure;
+      } catch (RuntimeException e) {
+        closeAfterFailure(e);
+        throw e;
+      }
+
+      action.accept(row);
+      return true;
+    }
+
+    private void closeAfterFailure(RuntimeException failure) {
+      try {
+        close();
+      } catch (UncheckedSQLException e) {
+        failure.addSuppressed(e.getCause());
+      }
+    }
+
+    private void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      SQLException failure = null;
+      try {
+        rs.close();
+      } catch (SQLException e) {
+        failure = e;
+      }
+      try {
+        ps.close();
+      } catch (SQLException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+      if (failure != null) {
+        throw new UncheckedSQLException(failure);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,309 @@
+package com.github.gitsby.sql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps rows to Java records or to beans with setters or public fields. Columns are matched to
+ * properties by label, ignoring case and underscores, so {@code select("created_at AS createdAt")}
+ * and {@code select("created_at")} both fill {@code createdAt}.
+ * <p>
+ * The column indexes are resolved once per result shape and compiled into one method handle
+ * that reads every column with its typed getter, {@code getInt} for an {@code int} component and so
+ * on, and calls the constructor or setters. Loops get the handle for their result set from
+ * {@link #forResultSet(ResultSet)}, after that a row costs no reflection, no name lookups and no
+ * boxing of primitive columns. Records are supported on Java 16 and later; the record path is not
+ * covered by the tests, which run on the Java 11 baseline.
+ */
+public final class RecordMapper<T> implements RowMapper<T> {
+
+  private static final Map<Class<?>, RecordMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+  // java.lang.Record accessors looked up reflectively, the library itself builds on Java 11
+  private static final Method IS_RECORD;
+  private static final Method GET_RECORD_COMPONENTS;
+  private static final Method COMPONENT_NAME;
+  private static final Method COMPONENT_TYPE;
+
+  static {
+    Method[] methods = new Method[4];
+    try {
+      Class<?> component = Class.forName("java.lang.reflect.RecordComponent");
+      methods[0] = Class.class.getMethod("isRecord");
+      methods[1] = Class.class.getMethod("getRecordComponents");
+      methods[2] = component.getMethod("getName");
+      methods[3] = component.getMethod("getType");
+    } catch (ReflectiveOperationException e) {
+      // records need Java 16, older runtimes only map beans
+      Arrays.fill(methods, null);
+    }
+    IS_RECORD = methods[0];
+    GET_RECORD_COMPONENTS = methods[1];
+    COMPONENT_NAME = methods[2];
+    COMPONENT_TYPE = methods[3];
+  }
+
+  private final Class<T> type;
+  private final MethodHandles.Lookup lookup;
+  private final Map<String, Property> properties;
+  private final boolean record;
+  private final Map<List<String>, MethodHandle> plans = new ConcurrentHashMap<>();
+
+  private RecordMapper(Class<T> type) {
+    this.type = type;
+    try {
+      this.lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Cannot access " + type.getName(), e);
+    }
+    this.record = isRecord(type);
+    this.properties = record ? recordComponents(type) : beanProperties(type);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> RecordMapper<T> of(Class<T> type) {
+    return (RecordMapper<T>) MAPPERS.computeIfAbsent(type, RecordMapper::new);
+  }
+
+  /**
+   * Resolves the columns of {@code rs} on every call, map rows through
+   * {@link #forResultSet(ResultSet)} instead.
+   */
+  @Override
+  public T map(ResultSet rs) throws SQLException {
+    return forResultSet(rs).map(rs);
+  }
+
+  @Override
+  public RowMapper<T> forResultSet(ResultSet rs) throws SQLException {
+    return new Bound<>(type, plan(rs.getMetaData()));
+  }
+
+  MethodHandle plan(ResultSetMetaData metaData) throws SQLException {
+    List<String> labels = new ArrayList<>(metaData.getColumnCount());
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      labels.add(metaData.getColumnLabel(i));
+    }
+
+    MethodHandle plan = plans.get(labels);
+    if (plan == null) {
+      plan = record ? recordPlan(labels) : beanPlan(labels);
+      plans.putIfAbsent(labels, plan);
+    }
+    return plan;
+  }
+
+  // (ResultSet)Object calling the canonical constructor with one typed getter per component
+  private MethodHandle recordPlan(List<String> labels) {
+    Map<String, Integer> columns = columns(labels);
+    Class<?>[] types = new Class<?>[properties.size()];
+    MethodHandle[] getters = new MethodHandle[properties.size()];
+    int i = 0;
+    for (Property property : properties.values()) {
+      Integer column = columns.get(property.key);
+      if (column == null) {
+        throw new IllegalArgumentException(
+            "No column for " + type.getName() + "." + property.name + " in " + labels);
+      }
+      types[i] = property.type;
+      getters[i++] = getter(property.type, column);
+    }
+
+    try {
+      MethodHandle constructor = lookup.findConstructor(
+          type, MethodType.methodType(void.class, types));
+      MethodHandle plan = MethodHandles.filterArguments(constructor, 0, getters);
+      // every argument is the same result set
+      plan = MethodHandles.permuteArguments(
+          plan, MethodType.methodType(type, ResultSet.class), new int[types.length]);
+      return plan.asType(MethodType.methodType(Object.class, ResultSet.class));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("No canonical constructor in " + type.getName(), e);
+    }
+  }
+
+  // (ResultSet)Object creating the bean and calling one setter per matched column
+  private MethodHandle beanPlan(List<String> labels) {
+    Map<String, Integer> columns = columns(labels);
+    MethodHandle plan;
+    try {
+      plan = lookup.findConstructor(type, MethodType.methodType(void.class));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("No accessible no-arg constructor in " + type.getName(),
+                                         e);
+    }
+    // (ResultSet)T
+    plan = MethodHandles.dropArguments(plan, 0, ResultSet.class);
+
+    for (Property property : properties.values()) {
+      Integer column = columns.get(property.key);
+      if (column == null) {
+        continue;
+      }
+      // (T, ResultSet)void
+      MethodHandle set = MethodHandles.filterArguments(property.setter, 1,
+                                                       getter(property.type, column));
+      // (T, ResultSet)T
+      MethodHandle setAndReturn = MethodHandles.foldArguments(
+          MethodHandles.dropArguments(MethodHandles.identity(type), 1, ResultSet.class), set);
+      // (ResultSet)T: bean from the previous step, then this setter
+      plan = MethodHandles.foldArguments(setAndReturn, plan);
+    }
+    return plan.asType(MethodType.methodType(Object.class, ResultSet.class));
+  }
+
+  private static Map<String, Integer> columns(List<String> labels) {
+    Map<String, Integer> columns = new HashMap<>();
+    for (int i = 0; i < labels.size(); i++) {
+      columns.putIfAbsent(key(labels.get(i)), i + 1);
+    }
+    return columns;
+  }
+
+  static String key(String name) {
+    return name.replace("_", "").toLowerCase(Locale.ROOT);
+  }
+
+  // (ResultSet)type reading one column
+  private static MethodHandle getter(Class<?> type, int column) {
+    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+    try {
+      MethodHandle getter;
+      if (type.isPrimitive()) {
+        String name = "get" + Character.toUpperCase(type.getName().charAt(0))
+            + type.getName().substring(1);
+        getter = lookup.findVirtual(ResultSet.class, name,
+                                    MethodType.methodType(type, int.class));
+      } else if (type == String.class) {
+        getter = lookup.findVirtual(ResultSet.class, "getString",
+                                    MethodType.methodType(String.class, int.class));
+      } else {
+        getter = lookup.findVirtual(ResultSet.class, "getObject",
+                                    MethodType.methodType(Object.class, int.class, Class.class));
+        getter = MethodHandles.insertArguments(getter, 2, type)
+            .asType(MethodType.methodType(type, ResultSet.class, int.class));
+      }
+      return MethodHandles.insertArguments(getter, 1, column);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("Unsupported property type " + type.getName(), e);
+    }
+  }
+
+  private static boolean isRecord(Class<?> type) {
+    if (IS_RECORD == null) {
+      return false;
+    }
+    try {
+      return (Boolean) IS_RECORD.invoke(type);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Map<String, Property> recordComponents(Class<?> type) {
+    Map<String, Property> properties = new LinkedHashMap<>();
+    try {
+      Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(type);
+      for (Object component : components) {
+        String name = (String) COMPONENT_NAME.invoke(component);
+        Class<?> componentType = (Class<?>) COMPONENT_TYPE.invoke(component);
+        properties.put(key(name), new Property(name, componentType, null));
+      }
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot read components of " + type.getName(), e);
+    }
+    return properties;
+  }
+
+  private Map<String, Property> beanProperties(Class<?> type) {
+    Map<String, Property> properties = new LinkedHashMap<>();
+    try {
+      for (Field field : type.getFields()) {
+        if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+          properties.put(key(field.getName()),
+                         new Property(field.getName(), field.getType(),
+                                      lookup.unreflectSetter(field)));
+        }
+      }
+      for (Method method : type.getMethods()) {
+        if (!Modifier.isStatic(method.getModifiers()) && method.getName().startsWith("set")
+            && method.getName().length() > 3 && method.getParameterCount() == 1) {
+          String name = method.getName().substring(3);
+          properties.put(key(name),
+                         new Property(name, method.getParameterTypes()[0],
+                                      lookup.unreflect(method)
+                                          .asType(MethodType.methodType(
+                                              void.class, type,
+                                              method.getParameterTypes()[0]))));
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Cannot access properties of " + type.getName(), e);
+    }
+    return properties;
+  }
+
+  @Override
+  public String toString() {
+    return "RecordMapper{" + type.getName() + ", properties=" + properties.keySet()
+        + ", shapes=" + plans.size() + "}";
+  }
+
+  private static final class Property {
+
+    private final String name;
+    private final String key;
+    private final Class<?> type;
+    // (T, type)void, null for record components
+    private final MethodHandle setter;
+
+    private Property(String name, Class<?> type, MethodHandle setter) {
+      this.name = name;
+      this.key = key(name);
+      this.type = type;
+      this.setter = setter;
+    }
+
+  }
+
+  // mapper for the rows of one result set
+  private static final class Bound<T> implements RowMapper<T> {
+
+    private final Class<T> type;
+    private final MethodHandle plan;
+
+    private Bound(Class<T> type, MethodHandle plan) {
+      this.type = type;
+      this.plan = plan;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T map(ResultSet rs) throws SQLException {
+      try {
+        return (T) plan.invokeExact(rs);
+      } catch (SQLException | RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException("Cannot map row to " + type.getName(), e);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,346 @@
+package com.github.gitsby.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Client side cache of query results, keyed on the SQL text and the bound values. Meant for
+ * reference data that is read on every request and rarely written.
+ * <p>
+ * Entries expire after the TTL of their template and are tagged with the tables the query reads,
+ * {@link #invalidate(String)} drops every entry of a table. A hit is one map lookup without locks;
+ * when the total weight, by default the number of rows, passes the maximum the least recently used
+ * entries are evicted down to seven eighths of it. Cached lists are unmodifiable and shared between
+ * callers, so the mapped rows must not be changed either.
+ * <p>
+ * A write in a transaction is only visible to other connections once it commits, and a reader may
+ * cache the old rows until then. End transactions that wrote through
+ * {@link #executeUpdate(Connection, SQL)} with {@link #commit(Connection)}, which invalidates the
+ * written tables again after the commit, or call {@link #invalidate(String)} after committing.
+ * <p>
+ * An entry only serves the mapper instance that filled it. Use a constant mapper or
+ * {@link RecordMapper#of(Class)} for hits, a lambda capturing local state is a new instance on
+ * every call and always misses.
+ */
+public final class ResultCache {
+
+  /**
+   * Estimated cost of keeping the rows of one query, in the unit of the maximum weight.
+   */
+  @FunctionalInterface
+  public interface Weigher {
+
+    long weigh(CompiledQuery query, List<?> rows);
+
+  }
+
+  public static final Weigher ROWS = (query, rows) -> 1 + rows.size();
+
+  private final long maximumWeight;
+  private final long defaultTtlNanos;
+  private final LongSupplier ticker;
+  private final Map<BoundQuery.Key, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, Long> ttls = new ConcurrentHashMap<>();
+  private final AtomicLong weight = new AtomicLong();
+  // bumped by every invalidation, results read before it are not stored
+  private final AtomicLong generation = new AtomicLong();
+  // tables written in transactions that are still open, invalidated again on commit
+  private final Map<Connection, Set<String>> uncommitted = new ConcurrentHashMap<>();
+  private volatile Weigher weigher = ROWS;
+  private volatile SingleFlight singleFlight;
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  public ResultCache(long maximumWeight, Duration defaultTtl) {
+    this(maximumWeight, defaultTtl, System::nanoTime);
+  }
+
+  ResultCache(long maximumWeight, Duration defaultTtl, LongSupplier ticker) {
+    if (maximumWeight <= 0) {
+      throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+    }
+    this.maximumWeight = maximumWeight;
+    this.defaultTtlNanos = defaultTtl.toNanos();
+    this.ticker = ticker;
+  }
+
+  public ResultCache weigher(Weigher weigher) {
+    this.weigher = weigher;
+    return this;
+  }
+
+  /**
+   * Coalesces the misses of one query, so an expired popular entry is read once and not by every
+   * caller that finds it expired.
+   */
+  public ResultCache singleFlight(SingleFlight singleFlight) {
+    this.singleFlight = singleFlight;
+    return this;
+  }
+
+  /**
+   * TTL for all executions of {@code template}, {@link Duration#ZERO} to never cache it.
+   */
+  public ResultCache ttl(CompiledQuery template, Duration ttl) {
+    if (ttl.isNegative()) {
+      throw new IllegalArgumentException("Negative TTL: " + ttl);
+    }
+    ttls.put(template.getSql(), ttl.toNanos());
+    return this;
+  }
+
+  /**
+   * Rows of {@code sql}, tagged with the tables it reads. Compiles the statement on every call, go
+   * through {@link #query(Connection, BoundQuery, Collection, RowMapper)} with a
+   * {@link TemplateCache} bound query on hot paths.
+   */
+  public <R> List<R> query(Connection connection, SQL sql, RowMapper<R> mapper)
+      throws SQLException {
+    return query(connection, sql.bind(), sql.tables(), mapper);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <R> List<R> query(Connection connection, BoundQuery bound, Collection<String> tables,
+                           RowMapper<R> mapper) throws SQLException {
+    BoundQuery.Key key = bound.key();
+    long now = ticker.getAsLong();
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      if (now - entry.expiresAt < 0 && entry.mapper == mapper) {
+        entry.lastAccess = now;
+        hitCount.increment();
+        return (List<R>) entry.rows;
+      }
+      remove(key, entry);
+    }
+    missCount.increment();
+
+    long generation = this.generation.get();
+    SingleFlight singleFlight = this.singleFlight;
+    List<R> rows = singleFlight != null ? singleFlight.query(connection, bound, mapper)
+        : Collections.unmodifiableList(execute(connection, bound, mapper));
+    Long ttl = ttls.get(key.getSql());
+    long ttlNanos = ttl != null ? ttl : defaultTtlNanos;
+    long rowsWeight = weigher.weigh(bound.getQuery(), rows);
+    if (ttlNanos > 0 && rowsWeight <= maximumWeight && this.generation.get() == generation) {
+      put(key, new Entry(rows, mapper, tags(tables), rowsWeight, now + ttlNanos, now));
+      if (this.generation.get() != generation) {
+        // invalidated while storing, the rows may predate the write
+        remove(key, entries.get(key));
+      }
+    }
+    return rows;
+  }
+
+  private static <R> List<R> execute(Connection connection, BoundQuery bound, RowMapper<R> mapper)
+      throws SQLException {
+    List<R> rows = new ArrayList<>();
+    try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql())) {
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        event.finish(QueryEvent.EXECUTE, bound.getQuery());
+        RowMapper<R> rowMapper = mapper.forResultSet(rs);
+        while (rs.next()) {
+          rows.add(rowMapper.map(rs));
+        }
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Executes a write and drops the cached results of the tables it touches. Without auto-commit the
+   * tables are remembered for {@link #commit(Connection)}.
+   */
+  public int executeUpdate(Connection connection, SQL sql) throws SQLException {
+    BoundQuery bound = sql.bind();
+    int updateCount;
+    try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql())) {
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      updateCount = ps.executeUpdate();
+      event.finish(QueryEvent.EXECUTE, bound.getQuery());
+    }
+    Set<String> tables = sql.tables();
+    for (String table : tables) {
+      invalidate(table);
+    }
+    if (!connection.getAutoCommit()) {
+      uncommitted.computeIfAbsent(connection, c -> ConcurrentHashMap.newKeySet()).addAll(tables);
+    }
+    return updateCount;
+  }
+
+  /**
+   * Commits {@code connection} and drops the results cached from other connections while its
+   * writes were not visible yet.
+   */
+  public void commit(Connection connection) throws SQLException {
+    try {
+      connection.commit();
+    } finally {
+      // also after a failed commit, whether it took effect is unknown
+      Set<String> tables = uncommitted.remove(connection);
+      if (tables != null) {
+        for (String table : tables) {
+          invalidate(table);
+        }
+      }
+    }
+  }
+
+  public void rollback(Connection connection) throws SQLException {
+    try {
+      connection.rollback();
+    } finally {
+      uncommitted.remove(connection);
+    }
+  }
+
+  public void invalidate(String table) {
+    generation.incrementAndGet();
+    String tag = table.toLowerCase(Locale.ROOT);
+    for (Map.Entry<BoundQuery.Key, Entry> e : entries.entrySet()) {
+      if (e.getValue().tags.contains(tag)) {
+        remove(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    for (Map.Entry<BoundQuery.Key, Entry> e : entries.entrySet()) {
+      remove(e.getKey(), e.getValue());
+    }
+  }
+
+  private static Set<String> tags(Collection<String> tables) {
+    Set<String> tags = new HashSet<>();
+    for (String table : tables) {
+      tags.add(table.toLowerCase(Locale.ROOT));
+    }
+    return tags;
+  }
+
+  private void put(BoundQuery.Key key, Entry entry) {
+    Entry previous = entries.put(key, entry);
+    weight.addAndGet(previous == null ? entry.weight : entry.weight - previous.weight);
+    if (weight.get() > maximumWeight) {
+      evict();
+    }
+  }
+
+  private boolean remove(BoundQuery.Key key, Entry entry) {
+    if (entry != null && entries.remove(key, entry)) {
+      weight.addAndGet(-entry.weight);
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized void evict() {
+    long now = ticker.getAsLong();
+    List<Map.Entry<BoundQuery.Key, Entry>> live = new ArrayList<>(entries.size());
+    for (Map.Entry<BoundQuery.Key, Entry> e : entries.entrySet()) {
+      if (now - e.getValue().expiresAt >= 0) {
+        remove(e.getKey(), e.getValue());
+      } else {
+        live.add(e);
+      }
+    }
+    if (weight.get() <= maximumWeight) {
+      return;
+    }
+
+    // evicting below the maximum leaves room for the next inserts before sorting again
+    long target = maximumWeight - maximumWeight / 8;
+    live.sort(Comparator.comparingLong(e -> e.getValue().lastAccess - now));
+    for (Map.Entry<BoundQuery.Key, Entry> e : live) {
+      if (weight.get() <= target) {
+        break;
+      }
+      if (remove(e.getKey(), e.getValue())) {
+        evictionCount.increment();
+      }
+    }
+  }
+
+  public long getMaximumWeight() {
+    return maximumWeight;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long weight() {
+    return weight.get();
+  }
+
+  public long hitCount() {
+    return hitCount.sum();
+  }
+
+  public long missCount() {
+    return missCount.sum();
+  }
+
+  public long evictionCount() {
+    return evictionCount.sum();
+  }
+
+  public double hitRate() {
+    long hits = hitCount();
+    long requests = hits + missCount();
+    return requests == 0 ? 1.0 : (double) hits / requests;
+  }
+
+  @Override
+  public String toString() {
+    return "ResultCache{size=" + entries.size() + ", weight=" + weight() + ", maximumWeight="
+        + maximumWeight + ", hits=" + hitCount() + ", misses=" + missCount()
+        + ", evictions=" + evictionCount() + "}";
+  }
+
+  private static final class Entry {
+
+    private final List<?> rows;
+    private final RowMapper<?> mapper;
+    private final Set<String> tags;
+    private final long weight;
+    private final long expiresAt;
+    // written on hits without synchronization, eviction only needs an approximate order
+    private long lastAccess;
+
+    private Entry(List<?> rows, RowMapper<?> mapper, Set<String> tags, long weight, long expiresAt,
+                  long lastAccess) {
+      this.rows = rows;
+      this.mapper = mapper;
+      this.tags = tags;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+      this.lastAccess = lastAccess;
+    }
+
+  }
+
+}
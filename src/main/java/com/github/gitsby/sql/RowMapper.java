@@ -0,0 +1,19 @@
+package com.github.gitsby.sql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface RowMapper<T> {
+
+  T map(ResultSet rs) throws SQLException;
+
+  /**
+   * Mapper for the rows of {@code rs}, asked for once before its first row. A mapper that looks
+   * columns up by label returns one bound to the columns of this result set.
+   */
+  default RowMapper<T> forResultSet(ResultSet rs) throws SQLException {
+    return this;
+  }
+
+}
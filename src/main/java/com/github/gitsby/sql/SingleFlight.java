@@ -0,0 +1,156 @@
+package com.github.gitsby.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces identical queries running at the same time: the first caller of a SQL text and values
+ * executes it, callers arriving while it runs wait for its rows instead of sending the same query
+ * again. Once it completes the next caller starts a new execution, nothing is cached.
+ * <p>
+ * Only callers passing the same mapper instance share an execution, e.g. a constant or
+ * {@link RecordMapper#of(Class)}. Waiters get the same unmodifiable list, so the mapped rows must
+ * not be changed. A failure of the execution is rethrown to every waiter, as a new
+ * {@link SQLException} with the original as cause.
+ * Templates whose result must not be shared, e.g. {@code SELECT ... FOR UPDATE} or one reading a
+ * sequence, are opted out with {@link #exclude(CompiledQuery)} and always run on their own.
+ */
+public final class SingleFlight {
+
+  private final Map<BoundQuery.Key, Call> calls = new ConcurrentHashMap<>();
+  private final Set<String> excluded = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder executionCount = new LongAdder();
+  private final LongAdder coalescedCount = new LongAdder();
+
+  public SingleFlight exclude(CompiledQuery template) {
+    excluded.add(template.getSql());
+    return this;
+  }
+
+  public <R> List<R> query(Connection connection, SQL sql, RowMapper<R> mapper)
+      throws SQLException {
+    return query(connection, sql.bind(), mapper);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <R> List<R> query(Connection connection, BoundQuery bound, RowMapper<R> mapper)
+      throws SQLException {
+    if (excluded.contains(bound.getQuery().getSql())) {
+      executionCount.increment();
+      return Collections.unmodifiableList(execute(connection, bound, mapper));
+    }
+
+    BoundQuery.Key key = bound.key();
+    Call call = new Call(mapper);
+    Call running = calls.putIfAbsent(key, call);
+    if (running != null) {
+      if (running.mapper == mapper) {
+        coalescedCount.increment();
+        return (List<R>) running.await();
+      }
+      // the same query with another mapper, which may map to another type
+      executionCount.increment();
+      return Collections.unmodifiableList(execute(connection, bound, mapper));
+    }
+
+    executionCount.increment();
+    try {
+      List<R> rows = Collections.unmodifiableList(execute(connection, bound, mapper));
+      calls.remove(key, call);
+      call.result.complete(rows);
+      return rows;
+    } catch (Throwable e) {
+      calls.remove(key, call);
+      call.result.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  private static <R> List<R> execute(Connection connection, BoundQuery bound, RowMapper<R> mapper)
+      throws SQLException {
+    List<R> rows = new ArrayList<>();
+    try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql())) {
+      bound.applyTo(ps);
+      QueryEvent event = QueryEvent.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        event.finish(QueryEvent.EXECUTE, bound.getQuery());
+        RowMapper<R> rowMapper = mapper.forResultSet(rs);
+        while (rs.next()) {
+          rows.add(rowMapper.map(rs));
+        }
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @return number of queries sent to the database
+   */
+  public long executionCount() {
+    return executionCount.sum();
+  }
+
+  /**
+   * @return number of callers served by another caller's execution
+   */
+  public long coalescedCount() {
+    return coalescedCount.sum();
+  }
+
+  /**
+   * @return number of distinct queries running right now
+   */
+  public int inFlight() {
+    return calls.size();
+  }
+
+  @Override
+  public String toString() {
+    return "SingleFlight{inFlight=" + calls.size() + ", executions=" + executionCount()
+        + ", coalesced=" + coalescedCount() + "}";
+  }
+
+  private static final class Call {
+
+    private final RowMapper<?> mapper;
+    private final CompletableFuture<List<?>> result = new CompletableFuture<>();
+
+    private Call(RowMapper<?> mapper) {
+      this.mapper = mapper;
+    }
+
+    private List<?> await() throws SQLException {
+      try {
+        return result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted waiting for a coalesced query", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof SQLException) {
+          SQLException failure = (SQLException) cause;
+          throw new SQLException(failure.getMessage(), failure.getSQLState(),
+                                 failure.getErrorCode(), failure);
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new SQLException("Coalesced query failed: " + cause, cause);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.github.gitsby.sql;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Value that binds a whole list as one SQL array through
+ * {@link java.sql.Connection#createArrayOf(String, Object[])}, for conditions like
+ * {@code id = ANY(:ids)}. Unlike a plain collection value it is never expanded, so the SQL text
+ * stays the same for any number of elements.
+ */
+public final class SqlArray {
+
+  private final String typeName;
+  private final Object[] elements;
+
+  private SqlArray(String typeName, Object[] elements) {
+    this.typeName = typeName;
+    this.elements = elements;
+  }
+
+  public static SqlArray of(String typeName, Collection<?> elements) {
+    return new SqlArray(typeName, elements.toArray());
+  }
+
+  public static SqlArray of(String typeName, Object... elements) {
+    return new SqlArray(typeName, elements.clone());
+  }
+
+  public String getTypeName() {
+    return typeName;
+  }
+
+  Object[] getElements() {
+    return elements;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SqlArray)) {
+      return false;
+    }
+    SqlArray that = (SqlArray) o;
+    return typeName.equals(that.typeName) && Arrays.equals(elements, that.elements);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * typeName.hashCode() + Arrays.hashCode(elements);
+  }
+
+  @Override
+  public String toString() {
+    return typeName + Arrays.toString(elements);
+  }
+
+}
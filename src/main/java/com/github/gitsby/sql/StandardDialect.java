@@ -0,0 +1,38 @@
+package com.github.gitsby.sql;
+
+enum StandardDialect implements Dialect {
+
+  DEFAULT(UpsertStyle.MERGE, PlaceholderStyle.POSITIONAL, LimitStyle.LIMIT_OFFSET),
+  POSTGRESQL(UpsertStyle.ON_CONFLICT, PlaceholderStyle.POSITIONAL, LimitStyle.LIMIT_OFFSET),
+  POSTGRESQL_NUMBERED(UpsertStyle.ON_CONFLICT, PlaceholderStyle.DOLLAR_NUMBERED,
+                      LimitStyle.LIMIT_OFFSET),
+  H2(UpsertStyle.MERGE, PlaceholderStyle.QUESTION_NUMBERED, LimitStyle.OFFSET_FETCH),
+  SQL2008(UpsertStyle.MERGE, PlaceholderStyle.POSITIONAL, LimitStyle.OFFSET_FETCH);
+
+  private final UpsertStyle upsertStyle;
+  private final PlaceholderStyle placeholderStyle;
+  private final LimitStyle limitStyle;
+
+  StandardDialect(UpsertStyle upsertStyle, PlaceholderStyle placeholderStyle,
+                  LimitStyle limitStyle) {
+    this.upsertStyle = upsertStyle;
+    this.placeholderStyle = placeholderStyle;
+    this.limitStyle = limitStyle;
+  }
+
+  @Override
+  public UpsertStyle upsertStyle() {
+    return upsertStyle;
+  }
+
+  @Override
+  public PlaceholderStyle placeholderStyle() {
+    return placeholderStyle;
+  }
+
+  @Override
+  public LimitStyle limitStyle() {
+    return limitStyle;
+  }
+
+}
@@ -0,0 +1,175 @@
+package com.github.gitsby.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU of prepared statements of one {@link Connection}, keyed on the compiled SQL text.
+ * Executing the same compiled query again reuses the prepared handle instead of preparing it
+ * anew, which matters for drivers without server side statement caching.
+ * <p>
+ * Statements handed out belong to the cache and must not be closed by the caller. Evicted
+ * statements are closed right away, {@link #close()} closes the rest. Like the connection itself
+ * a cache is meant to be used by one thread at a time; the metrics may be read from any thread.
+ */
+public final class StatementCache implements AutoCloseable {
+
+  private final Connection connection;
+  private final int maximumSize;
+  private final LinkedHashMap<String, PreparedStatement> statements =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  public StatementCache(Connection connection, int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+    }
+    this.connection = connection;
+    this.maximumSize = maximumSize;
+  }
+
+  public Connection getConnection() {
+    return connection;
+  }
+
+  public PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement ps = statements.get(sql);
+    if (ps != null) {
+      if (!ps.isClosed()) {
+        hitCount.increment();
+        return ps;
+      }
+      // closed behind our back, e.g. by the pool on connection reset
+      statements.remove(sql);
+    }
+
+    missCount.increment();
+    ps = connection.prepareStatement(sql);
+    statements.put(sql, ps);
+    evict();
+    return ps;
+  }
+
+  public PreparedStatement prepare(CompiledQuery query) throws SQLException {
+    return prepare(query.getSql());
+  }
+
+  /**
+   * Every parameter of {@code bound} must be set: the statement is reused, so a parameter left out
+   * would keep the value of the previous execution. Applying fails with
+   * {@link IllegalStateException} instead.
+   *
+   * @return the cached statement with the values of {@code bound} applied
+   */
+  public PreparedStatement prepare(BoundQuery bound) throws SQLException {
+    return bound.applyTo(prepare(bound.getQuery().getSql()));
+  }
+
+  public int executeUpdate(BoundQuery bound) throws SQLException {
+    PreparedStatement ps = prepare(bound);
+    QueryEvent event = QueryEvent.start();
+    int updateCount = ps.executeUpdate();
+    event.finish(QueryEvent.EXECUTE, bound.getQuery());
+    return updateCount;
+  }
+
+  public <R> List<R> query(BoundQuery bound, RowMapper<R> mapper) throws SQLException {
+    List<R> result = new ArrayList<>();
+    PreparedStatement ps = prepare(bound);
+    QueryEvent event = QueryEvent.start();
+    try (ResultSet rs = ps.executeQuery()) {
+      event.finish(QueryEvent.EXECUTE, bound.getQuery());
+      RowMapper<R> rowMapper = mapper.forResultSet(rs);
+      while (rs.next()) {
+        result.add(rowMapper.map(rs));
+      }
+    }
+    return result;
+  }
+
+  private void evict() throws SQLException {
+    SQLException failure = null;
+    Iterator<PreparedStatement> eldest = statements.values().iterator();
+    while (statements.size() > maximumSize) {
+      PreparedStatement ps = eldest.next();
+      eldest.remove();
+      evictionCount.increment();
+      failure = closeQuietly(ps, failure);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static SQLException closeQuietly(PreparedStatement ps, SQLException failure) {
+    try {
+      ps.close();
+    } catch (SQLException e) {
+      if (failure == null) {
+        return e;
+      }
+      failure.addSuppressed(e);
+    }
+    return failure;
+  }
+
+  /**
+   * Closes all cached statements, the connection stays open.
+   */
+  @Override
+  public void close() throws SQLException {
+    SQLException failure = null;
+    for (PreparedStatement ps : statements.values()) {
+      failure = closeQuietly(ps, failure);
+    }
+    statements.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public int size() {
+    return statements.size();
+  }
+
+  public long hitCount() {
+    return hitCount.sum();
+  }
+
+  public long missCount() {
+    return missCount.sum();
+  }
+
+  public long evictionCount() {
+    return evictionCount.sum();
+  }
+
+  public double hitRate() {
+    long hits = hitCount();
+    long requests = hits + missCount();
+    return requests == 0 ? 1.0 : (double) hits / requests;
+  }
+
+  @Override
+  public String toString() {
+    return "StatementCache{size=" + statements.size() + ", maximumSize=" + maximumSize
+        + ", hits=" + hitCount() + ", misses=" + missCount()
+        + ", evictions=" + evictionCount() + "}";
+  }
+
+}
@@ -0,0 +1,93 @@
+package com.github.gitsby.sql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of compiled queries keyed on the structure of a {@link SQL} builder. Two
+ * builders with the same clauses and CTEs share one {@link CompiledQuery}, so a hit skips rendering
+ * and parsing altogether. Values set on the builder are not part of the key.
+ */
+public final class TemplateCache {
+
+  private final int maximumSize;
+  private final Map<Object, CompiledQuery> cache;
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  public TemplateCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.cache = new LinkedHashMap<Object, CompiledQuery>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, CompiledQuery> eldest) {
+        if (size() > TemplateCache.this.maximumSize) {
+          evictionCount.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  CompiledQuery get(Object shape, Supplier<CompiledQuery> compiler) {
+    CompiledQuery query;
+    synchronized (cache) {
+      query = cache.get(shape);
+    }
+    if (query != null) {
+      hitCount.increment();
+      return query;
+    }
+
+    missCount.increment();
+    // Compile outside the lock, a racing miss on the same shape only costs a duplicate compile
+    query = compiler.get();
+    synchronized (cache) {
+      CompiledQuery existing = cache.putIfAbsent(shape, query);
+      return existing != null ? existing : query;
+    }
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  public long hitCount() {
+    return hitCount.sum();
+  }
+
+  public long missCount() {
+    return missCount.sum();
+  }
+
+  public long evictionCount() {
+    return evictionCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "TemplateCache{size=" + size() + ", maximumSize=" + maximumSize
+        + ", hits=" + hitCount() + ", misses=" + missCount()
+        + ", evictions=" + evictionCount() + "}";
+  }
+
+}
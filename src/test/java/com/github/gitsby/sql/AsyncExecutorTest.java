@@ -0,0 +1,246 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncExecutorTest {
+
+  // more rows than a test waits for, H2 checks for cancellation while counting
+  private static final String ENDLESS =
+      "select count(*) from system_range(1, 100000) a, system_range(1, 100000) b";
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private JdbcDataSource dataSource;
+  private Connection keepAlive;
+
+  @Before
+  public void setUp() throws Exception {
+    dataSource = new JdbcDataSource();
+    // a database of its own, cancelled queries of a previous test may still hold connections
+    dataSource.setURL("jdbc:h2:mem:async" + DATABASES.incrementAndGet());
+    keepAlive = dataSource.getConnection();
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("create table test_table (id int primary key)");
+      statement.execute("insert into test_table select x from system_range(1, 100)");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    keepAlive.close();
+  }
+
+  @Test
+  public void query_and_update() throws Exception {
+    try (AsyncExecutor async = new AsyncExecutor(dataSource, 4)) {
+      CompletableFuture<List<Integer>> ids = async.query(
+          new SQL().select("id").from("test_table").where("id < :maxId").order_by("id")
+              .setValue("maxId", 4).bind(),
+          rs -> rs.getInt(1));
+      CompletableFuture<Integer> deleted = async.update(
+          new SQL().deleteFrom("test_table").where("id > :minId").setValue("minId", 90).bind());
+
+      assertThat(ids.get(5, TimeUnit.SECONDS)).containsExactly(1, 2, 3);
+      assertThat(deleted.get(5, TimeUnit.SECONDS)).isEqualTo(10);
+    }
+  }
+
+  @Test
+  public void limits_queries_in_flight() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    try (AsyncExecutor async = new AsyncExecutor(dataSource, 2)) {
+      List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(async.submit((connection, statements) -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(20);
+            try (ResultSet rs = statements.prepare(connection, "select 1").executeQuery()) {
+              rs.next();
+              return rs.getInt(1);
+            }
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          } finally {
+            running.decrementAndGet();
+          }
+        }, null));
+      }
+
+      for (CompletableFuture<Integer> future : futures) {
+        assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+      }
+      assertThat(maxRunning.get()).isEqualTo(2);
+      assertThat(async.getInFlight()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void platform_threads_bounded_by_limit() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = AsyncExecutor.platformExecutor(2);
+
+    try (AsyncExecutor async = new AsyncExecutor(dataSource, 2, executor)) {
+      List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(async.submit((connection, statements) -> {
+          threads.add(Thread.currentThread());
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+          return 1;
+        }, null));
+      }
+      release.countDown();
+
+      for (CompletableFuture<Integer> future : futures) {
+        assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+      }
+      // a burst of queued queries does not start a thread each
+      assertThat(threads).hasSize(2);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void deadline_cancels_statement() throws Exception {
+    try (AsyncExecutor async = new AsyncExecutor(dataSource, 1)) {
+      CompletableFuture<Long> endless = async.submit((connection, statements) -> {
+        try (ResultSet rs = statements.prepare(connection, ENDLESS).executeQuery()) {
+          rs.next();
+          return rs.getLong(1);
+        }
+      }, Duration.ofMillis(100));
+
+      try {
+        endless.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+      }
+
+      // the only permit comes back once the cancelled statement returns
+      assertThat(async.query(new SQL().select("count(*)").from("test_table").bind(),
+                             rs -> rs.getInt(1)).get(5, TimeUnit.SECONDS))
+          .containsExactly(100);
+    }
+  }
+
+  @Test
+  public void no_write_after_deadline() throws Exception {
+    // a pool that takes longer to hand out a connection than the deadline allows
+    DataSource slow = (DataSource) Proxy.newProxyInstance(
+        DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getConnection")) {
+            Thread.sleep(500);
+          }
+          try {
+            return method.invoke(dataSource, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+
+    try (AsyncExecutor async = new AsyncExecutor(slow, 1)) {
+      CompletableFuture<Integer> insert = async.update(
+          new SQL().insertInto("test_table").columns("id").values("1000").bind(),
+          Duration.ofMillis(100));
+      try {
+        insert.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+      }
+
+      // the only permit comes back once the late connection was handed back unused
+      assertThat(async.submit((connection, statements) -> 1, null).get(5, TimeUnit.SECONDS))
+          .isEqualTo(1);
+      try (Statement statement = keepAlive.createStatement();
+           ResultSet rs = statement.executeQuery("select count(*) from test_table")) {
+        rs.next();
+        assertThat(rs.getInt(1)).isEqualTo(100);
+      }
+    }
+  }
+
+  @Test
+  public void cancel_skips_waiting_query() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger executed = new AtomicInteger();
+
+    try (AsyncExecutor async = new AsyncExecutor(dataSource, 1)) {
+      CompletableFuture<Integer> blocking = async.submit((connection, statements) -> {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        return 1;
+      }, null);
+      started.await();
+
+      CompletableFuture<Integer> waiting = async.submit((connection, statements) -> {
+        return executed.incrementAndGet();
+      }, null);
+      assertThat(waiting.cancel(true)).isTrue();
+      release.countDown();
+
+      assertThat(blocking.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+      try {
+        waiting.join();
+        fail();
+      } catch (CancellationException e) {
+        // expected
+      }
+      // a later query gets the permit, the cancelled one never ran
+      assertThat(async.submit((connection, statements) -> 2, null).get(5, TimeUnit.SECONDS))
+          .isEqualTo(2);
+      assertThat(executed.get()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void rejects_non_positive_limit() {
+    try {
+      new AsyncExecutor(dataSource, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).contains("0");
+    }
+  }
+
+}
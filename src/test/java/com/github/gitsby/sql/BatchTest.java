@@ -0,0 +1,143 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table test_table (id int primary key, name varchar(20))");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private int count() throws Exception {
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("select count(*) from test_table")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  private static CompiledQuery insert() {
+    CompiledQuery select = new SQL()
+        .select(":id, :name")
+        .compile();
+    return new CompiledQuery("insert into test_table (id, name) " + select.getSql(),
+                             select.getIndex());
+  }
+
+  private static Map<String, Object> row(int id, String name) {
+    Map<String, Object> row = new HashMap<>();
+    row.put("id", id);
+    row.put("name", name);
+    return row;
+  }
+
+  @Test
+  public void execute_rows_in_batches() throws Exception {
+    CompiledQuery query = insert();
+    List<Map<String, Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      rows.add(row(i, "name" + i));
+    }
+
+    BatchResult result = new Batch(query).batchSize(3).execute(connection, rows);
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(result.getRowCount()).isEqualTo(10);
+    assertThat(result.getUpdateCounts()).isEqualTo(new int[]{1, 1, 1, 1, 1, 1, 1, 1, 1, 1});
+    assertThat(count()).isEqualTo(10);
+  }
+
+  @Test
+  public void execute_with_row_binder() throws Exception {
+    CompiledQuery query = insert();
+    int id = query.getParameterId("id");
+    int name = query.getParameterId("name");
+
+    BatchResult result = new Batch(query).batchSize(4).execute(
+        connection, IntStream.range(0, 9).iterator(),
+        (Integer row, BoundQuery bound) -> bound.setInt(id, row).set(name, "name" + row));
+
+    assertThat(result.isSuccessful()).isTrue();
+    assertThat(result.getRowCount()).isEqualTo(9);
+    assertThat(count()).isEqualTo(9);
+  }
+
+  @Test
+  public void report_failed_rows() throws Exception {
+    CompiledQuery query = insert();
+    List<Map<String, Object>> rows = new ArrayList<>();
+    rows.add(row(1, "name1"));
+    rows.add(row(1, "duplicate"));
+    rows.add(row(2, "name2"));
+    rows.add(row(3, "name3"));
+
+    BatchResult result = new Batch(query).batchSize(3).execute(connection, rows);
+
+    assertThat(result.isSuccessful()).isFalse();
+    assertThat(result.getRowCount()).isEqualTo(3);
+    assertThat(result.getUpdateCount(1)).isEqualTo(Statement.EXECUTE_FAILED);
+    assertThat(result.getFailures()).hasSize(1);
+    assertThat(result.getFailures().get(0).getRow()).isEqualTo(1);
+  }
+
+  @Test
+  public void continue_on_failure() throws Exception {
+    CompiledQuery query = insert();
+    List<Map<String, Object>> rows = new ArrayList<>();
+    rows.add(row(1, "name1"));
+    rows.add(row(1, "duplicate"));
+    rows.add(row(2, "name2"));
+    rows.add(row(3, "name3"));
+
+    BatchResult result = new Batch(query).batchSize(2).continueOnFailure(true)
+        .execute(connection, rows.stream());
+
+    assertThat(result.getRowCount()).isEqualTo(4);
+    assertThat(result.getFailures()).hasSize(1);
+    assertThat(count()).isEqualTo(3);
+  }
+
+  @Test
+  public void row_with_missing_key_fails() throws Exception {
+    List<Map<String, Object>> rows = new ArrayList<>();
+    rows.add(row(1, "one"));
+    Map<String, Object> missingName = new HashMap<>();
+    missingName.put("id", 2);
+    rows.add(missingName);
+
+    try {
+      new Batch(insert()).execute(connection, rows);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("Parameter name is not set");
+    }
+    // the failure comes before the batch is sent, so no row is inserted
+    assertThat(count()).isEqualTo(0);
+  }
+
+}
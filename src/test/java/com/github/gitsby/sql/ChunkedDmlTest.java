@@ -0,0 +1,141 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkedDmlTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table test_table (id int primary key, status varchar(20))");
+      statement.execute("insert into test_table select x, 'new' from system_range(1, 100)");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private int count(String where) throws Exception {
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("select count(*) from test_table where " + where)) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  @Test
+  public void same_sql_for_every_chunk() {
+    ChunkedDml dml = new ChunkedDml(() -> new SQL().deleteFrom("test_table"), "id");
+
+    assertThat(dml.bind(3).getQuery().getSql())
+        .isEqualTo("DELETE FROM test_table\nWHERE id IN (?, ?, ?)");
+  }
+
+  @Test
+  public void own_where_is_parenthesized() throws Exception {
+    ChunkedDml dml = new ChunkedDml(
+        () -> new SQL().update("test_table").set("status = 'done'").where("id < 5 OR id > 95")
+            .returning("id"),
+        "id");
+
+    assertThat(dml.bind(2).getQuery().getSql()).isEqualTo(
+        "UPDATE test_table\nSET status = 'done'\nWHERE (id < 5 OR id > 95) AND id IN (?, ?)\n"
+            + "RETURNING id");
+    // rows matching only the OR branch stay outside the key set
+    int updateCount = new ChunkedDml(
+        () -> new SQL().update("test_table").set("status = 'done'").where("id < 5 OR id > 95"),
+        "id")
+        .execute(connection, Arrays.asList(2, 3, 50));
+
+    assertThat(updateCount).isEqualTo(2);
+    assertThat(count("status = 'done'")).isEqualTo(2);
+  }
+
+  @Test
+  public void returning_rows_of_all_chunks() throws Exception {
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 1; i <= 25; i++) {
+      keys.add(i * 3);
+    }
+
+    // H2 has no RETURNING, any statement with a result set runs the same way
+    List<Integer> ids = new ChunkedDml(
+        () -> new SQL().select("id").from("test_table").where("status = :status")
+            .setValue("status", "new"),
+        "id")
+        .chunkSize(10)
+        .executeReturning(connection, keys, rs -> rs.getInt(1));
+
+    // the last chunk repeats its last key, which does not repeat the row
+    assertThat(ids).hasSize(25);
+    assertThat(new TreeSet<>(ids)).isEqualTo(new TreeSet<>(keys));
+  }
+
+  @Test
+  public void update_in_chunks() throws Exception {
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 1; i <= 25; i++) {
+      keys.add(i * 2);
+    }
+
+    int updateCount = new ChunkedDml(
+        () -> new SQL()
+            .update("test_table")
+            .set("status = :status")
+            .where("status <> :status")
+            .setValue("status", "done"),
+        "id")
+        .chunkSize(10)
+        .execute(connection, keys);
+
+    assertThat(updateCount).isEqualTo(25);
+    assertThat(count("status = 'done'")).isEqualTo(25);
+    assertThat(count("status = 'done' and mod(id, 2) = 1")).isEqualTo(0);
+  }
+
+  @Test
+  public void delete_in_chunks_with_commit() throws Exception {
+    connection.setAutoCommit(false);
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 1; i <= 95; i++) {
+      keys.add(i);
+    }
+
+    int updateCount = new ChunkedDml(() -> new SQL().deleteFrom("test_table"), "id")
+        .chunkSize(30)
+        .commitEachChunk(true)
+        .execute(connection, keys);
+    connection.rollback();
+
+    assertThat(updateCount).isEqualTo(95);
+    assertThat(count("1 = 1")).isEqualTo(5);
+  }
+
+  @Test
+  public void no_keys() throws Exception {
+    int updateCount = new ChunkedDml(() -> new SQL().deleteFrom("test_table"), "id")
+        .execute(connection, Collections.emptyList());
+
+    assertThat(updateCount).isEqualTo(0);
+    assertThat(count("1 = 1")).isEqualTo(100);
+  }
+
+}
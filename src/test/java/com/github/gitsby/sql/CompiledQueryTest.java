@@ -0,0 +1,158 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class CompiledQueryTest {
+
+  @Test
+  public void applyParameter_to_every_index() throws Exception {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .from("test_table")
+        .where("column1 = :param1")
+        .where("column2 = :param2")
+        .where("column3 = :param1")
+        .compile();
+
+    Map<String, Object> values = new HashMap<>();
+    values.put("param1", 42);
+    values.put("param2", "someValue2");
+
+    RecordingPreparedStatement recording = new RecordingPreparedStatement();
+    query.applyParameter(recording.ps, values);
+
+    assertThat(recording.calls)
+        .containsOnly("setInt(1, 42)", "setInt(3, 42)", "setString(2, someValue2)");
+  }
+
+  @Test
+  public void applyParameter_with_different_values() throws Exception {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .from("test_table")
+        .where("column1 = :param1")
+        .compile();
+
+    RecordingPreparedStatement first = new RecordingPreparedStatement();
+    query.applyParameter(first.ps, Collections.singletonMap("param1", 1L));
+    RecordingPreparedStatement second = new RecordingPreparedStatement();
+    query.applyParameter(second.ps, Collections.singletonMap("param1", 2L));
+
+    assertThat(first.calls).containsExactly("setLong(1, 1)");
+    assertThat(second.calls).containsExactly("setLong(1, 2)");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void applyParameter_unknown_parameter() throws Exception {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .from("test_table")
+        .compile();
+
+    query.applyParameter(new RecordingPreparedStatement().ps,
+                         Collections.singletonMap("param1", 1));
+  }
+
+  @Test
+  public void indexes_are_immutable() {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .where("column1 = :param1")
+        .compile();
+
+    query.getIndexes("param1")[0] = 2;
+
+    assertThat(query.getIndexes("param1")).isEqualTo(new int[]{1});
+  }
+
+  @Test
+  public void indexes_grouped_by_parameter() {
+    StringBuilder where = new StringBuilder("1 = 1");
+    for (int i = 0; i < 3000; i++) {
+      where.append(" and column").append(i).append(" = :param").append(i % 3);
+    }
+
+    CompiledQuery query = new SQL()
+        .select("1")
+        .where(where.toString())
+        .compile();
+
+    assertThat(query.getParameterNames()).containsExactly("param0", "param1", "param2");
+    assertThat(query.getPlaceholderCount()).isEqualTo(3000);
+    int[] indexes = query.getIndexes("param2");
+    assertThat(indexes).hasSize(1000);
+    for (int i = 0; i < indexes.length; i++) {
+      assertThat(indexes[i]).isEqualTo(3 * i + 3);
+    }
+  }
+
+  @Test
+  public void bind_primitives_by_id() throws Exception {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .where("column1 = :param1 and column2 = :param2 and column3 = :param1")
+        .compile();
+    int param1 = query.getParameterId("param1");
+    int param2 = query.getParameterId("param2");
+
+    RecordingPreparedStatement recording = new RecordingPreparedStatement();
+    query.bind().setInt(param1, 7).setLong(param2, 8L).applyTo(recording.ps);
+
+    assertThat(recording.calls).containsExactly("setInt(1, 7)", "setInt(3, 7)", "setLong(2, 8)");
+  }
+
+  @Test
+  public void bind_value_of_other_type_than_first_seen() throws Exception {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .where("column1 = :param1")
+        .compile();
+
+    RecordingPreparedStatement first = new RecordingPreparedStatement();
+    query.bind().set("param1", "someValue").applyTo(first.ps);
+    RecordingPreparedStatement second = new RecordingPreparedStatement();
+    query.bind().set("param1", 5).applyTo(second.ps);
+    RecordingPreparedStatement third = new RecordingPreparedStatement();
+    query.bind().set("param1", null).applyTo(third.ps);
+
+    assertThat(first.calls).containsExactly("setString(1, someValue)");
+    assertThat(second.calls).containsExactly("setInt(1, 5)");
+    assertThat(third.calls).containsExactly("setObject(1, null)");
+  }
+
+  @Test
+  public void bind_declared_type() throws Exception {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .where("column1 = :param1")
+        .compile()
+        .declare("param1", Date.class);
+
+    RecordingPreparedStatement recording = new RecordingPreparedStatement();
+    query.bind().set("param1", new Date(0)).applyTo(recording.ps);
+
+    assertThat(recording.calls).containsExactly("setTimestamp(1, " + new Timestamp(0) + ")");
+  }
+
+  @Test
+  public void streamed_query_has_no_key() throws Exception {
+    CompiledQuery streamed = new SQL().select("1").where("id = :id").compileTo(new StringWriter());
+
+    try {
+      streamed.bind().set("id", 1).key();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).contains("no SQL text to key on");
+    }
+  }
+
+}
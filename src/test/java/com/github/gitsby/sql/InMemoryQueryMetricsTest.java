@@ -0,0 +1,111 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryQueryMetricsTest {
+
+  private final InMemoryQueryMetrics metrics = new InMemoryQueryMetrics();
+
+  @Before
+  public void setUp() {
+    QueryMetrics.install(metrics);
+  }
+
+  @After
+  public void tearDown() {
+    QueryMetrics.install(QueryMetrics.NOOP);
+  }
+
+  private static SQL query() {
+    SQL sql = new SQL()
+        .select("1")
+        .from("with_table")
+        .where("column1 in (:param1)")
+        .setValue("param1", Arrays.asList(1, 2, 3));
+
+    sql.with("with_table")
+        .select("1")
+        .from("test_table")
+        .where("column2 = :param2")
+        .setValue("param2", "someValue2");
+
+    return sql;
+  }
+
+  @Test
+  public void record_compile_and_apply() throws Exception {
+    BoundQuery bound = query().bind();
+    bound.applyTo(new RecordingPreparedStatement().ps);
+    bound.applyTo(new RecordingPreparedStatement().ps);
+
+    List<InMemoryQueryMetrics.TemplateStats> templates = metrics.getTemplates();
+    assertThat(templates).hasSize(1);
+
+    InMemoryQueryMetrics.TemplateStats stats = templates.get(0);
+    assertThat(stats.getTemplate()).isEqualTo(bound.getQuery().getSql());
+    assertThat(stats.getSqlLength()).isEqualTo(bound.getQuery().getSql().length());
+    assertThat(stats.getPlaceholderCount()).isEqualTo(5);
+    assertThat(stats.getCteCount()).isEqualTo(1);
+    assertThat(stats.getRender().getCount()).isEqualTo(1);
+    assertThat(stats.getApply().getCount()).isEqualTo(2);
+    assertThat(stats.getApply().getPercentileNanos(99))
+        .isLessThanOrEqualTo(stats.getApply().getMaxNanos());
+    assertThat(metrics.dump()).contains("placeholders=5 ctes=1");
+  }
+
+  @Test
+  public void streamed_length() throws Exception {
+    StringWriter writer = new StringWriter();
+    query().compileTo(writer);
+
+    InMemoryQueryMetrics.TemplateStats stats = metrics.getTemplates().get(0);
+    assertThat(stats.getTemplate()).isEqualTo(InMemoryQueryMetrics.STREAMED);
+    assertThat(stats.getSqlLength()).isEqualTo(writer.toString().length());
+  }
+
+  @Test
+  public void templates_beyond_maximum_share_one_entry() {
+    InMemoryQueryMetrics bounded = new InMemoryQueryMetrics(3);
+    QueryMetrics.install(bounded);
+    for (int i = 0; i < 10; i++) {
+      new SQL().select("1").from("test_table").where("id = " + i).compile();
+    }
+
+    assertThat(bounded.getTemplates()).hasSize(4);
+    assertThat(bounded.dump()).contains(InMemoryQueryMetrics.OTHER);
+    for (InMemoryQueryMetrics.TemplateStats stats : bounded.getTemplates()) {
+      if (stats.getTemplate().equals(InMemoryQueryMetrics.OTHER)) {
+        assertThat(stats.getRender().getCount()).isEqualTo(7);
+      }
+    }
+  }
+
+  @Test
+  public void noop_records_nothing() {
+    QueryMetrics.install(QueryMetrics.NOOP);
+    query().compile();
+
+    assertThat(metrics.getTemplates()).isEmpty();
+  }
+
+  @Test
+  public void histogram_percentiles() {
+    InMemoryQueryMetrics.LatencyHistogram histogram = new InMemoryQueryMetrics.LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000);
+    }
+
+    assertThat(histogram.getCount()).isEqualTo(100);
+    assertThat(histogram.getMeanNanos()).isEqualTo(50500);
+    assertThat(histogram.getPercentileNanos(50)).isEqualTo(65535);
+    assertThat(histogram.getPercentileNanos(100)).isEqualTo(100000);
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class KeysetTest {
+
+  @Test
+  public void row_value_predicate() {
+    Keyset keyset = new Keyset("t.created_at DESC", "t.id DESC");
+
+    SQL sql = keyset.apply(new SQL()
+                               .select("t.id")
+                               .from("test_table t")
+                               .where("t.status = :status")
+                               .setValue("status", "new"),
+                           keyset.cursor(new Timestamp(1000L), 42L));
+
+    BoundQuery bound = sql.bind();
+    assertThat(bound.getQuery().getSql()).isEqualTo(
+        "SELECT t.id\nFROM test_table t\n"
+        + "WHERE t.status = ? AND (t.created_at, t.id) < (?, ?)\n"
+        + "ORDER BY t.created_at DESC, t.id DESC");
+    assertThat(bound.getQuery().getParameterNames()).containsExactly("status", "keyset0", "keyset1");
+  }
+
+  @Test
+  public void first_page_has_no_predicate() {
+    SQL sql = new Keyset("id").apply(new SQL().select("id").from("test_table"), null);
+
+    assertThat(sql.compile().getSql()).isEqualTo("SELECT id\nFROM test_table\nORDER BY id ASC");
+  }
+
+  @Test
+  public void apply_leaves_statement_unchanged() {
+    Keyset keyset = new Keyset("id");
+    SQL base = new SQL().select("id").from("test_table");
+
+    keyset.apply(base, keyset.cursor(1));
+    SQL second = keyset.apply(base, keyset.cursor(2));
+
+    assertThat(base.compile().getSql()).isEqualTo("SELECT id\nFROM test_table");
+    assertThat(second.compile().getSql()).isEqualTo(
+        "SELECT id\nFROM test_table\nWHERE (id) > (?)\nORDER BY id ASC");
+  }
+
+  @Test
+  public void mixed_directions() {
+    assertThat(new Keyset("name", "id DESC").predicate())
+        .isEqualTo("((name > :keyset0) OR (name = :keyset0 AND id < :keyset1))");
+  }
+
+  @Test
+  public void cursor_round_trip() {
+    Keyset keyset = new Keyset("created_at", "name", "id");
+    Timestamp timestamp = new Timestamp(1234L);
+    timestamp.setNanos(5678);
+
+    String cursor = keyset.cursor(timestamp, "some name", 7);
+
+    assertThat(cursor).matches("[A-Za-z0-9_-]+");
+    assertThat(keyset.decode(cursor)).containsExactly(timestamp, "some name", 7);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reject_cursor_of_other_keyset() {
+    new Keyset("id").decode(new Keyset("id DESC").cursor(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reject_garbage_cursor() {
+    new Keyset("id").decode("not a cursor");
+  }
+
+  @Test
+  public void walk_all_pages() throws Exception {
+    try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:")) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("create table test_table (id int primary key, grp int)");
+        statement.execute("insert into test_table select x, mod(x, 3) from system_range(1, 10)");
+      }
+
+      Keyset keyset = new Keyset("grp", "id DESC");
+      // one frozen base statement for every page
+      SQL base = new SQL().select("id, grp").from("test_table").freeze();
+      List<Integer> seen = new ArrayList<>();
+      String cursor = null;
+      int pages = 0;
+      do {
+        Keyset.Page<Integer> page = keyset.page(connection, base, cursor, 4,
+                                                rs -> rs.getInt("id"));
+        seen.addAll(page.getRows());
+        cursor = page.getNextCursor();
+        pages++;
+      } while (cursor != null);
+
+      assertThat(pages).isEqualTo(3);
+      assertThat(seen).containsExactly(9, 6, 3, 10, 7, 4, 1, 8, 5, 2);
+    }
+  }
+
+}
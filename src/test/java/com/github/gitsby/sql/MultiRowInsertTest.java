@@ -0,0 +1,72 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiRowInsertTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table test_table (id int primary key, name varchar(20))");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void chunk_sizes() {
+    assertThat(MultiRowInsert.chunkSizes(0, 8)).isEmpty();
+    assertThat(MultiRowInsert.chunkSizes(8, 8)).containsExactly(8);
+    assertThat(MultiRowInsert.chunkSizes(23, 8)).containsExactly(8, 8, 4, 2, 1);
+    assertThat(MultiRowInsert.chunkSizes(5, 1000)).containsExactly(4, 1);
+  }
+
+  @Test
+  public void rows_per_statement_under_parameter_limit() {
+    MultiRowInsert insert = new MultiRowInsert("test_table", "column1", "column2", "column3");
+
+    assertThat(insert.getRowsPerStatement()).isEqualTo(1000);
+    assertThat(insert.maxRows(100000).getRowsPerStatement()).isEqualTo(21845);
+    assertThat(insert.maxParameters(10).getRowsPerStatement()).isEqualTo(3);
+    assertThat(insert.compile(2).getSql()).isEqualTo(
+        "INSERT INTO test_table (column1, column2, column3)\nVALUES (?, ?, ?), (?, ?, ?)");
+    assertThat(insert.compile(2)).isSameAs(insert.compile(2));
+  }
+
+  @Test
+  public void execute_in_chunks() throws Exception {
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 23; i++) {
+      rows.add(new Object[]{i, "name" + i});
+    }
+
+    int updateCount = new MultiRowInsert("test_table", "id", "name")
+        .maxParameters(16)
+        .execute(connection, rows);
+
+    assertThat(updateCount).isEqualTo(23);
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("select count(*), sum(id) from test_table")) {
+      rs.next();
+      assertThat(rs.getInt(1)).isEqualTo(23);
+      assertThat(rs.getInt(2)).isEqualTo(253);
+    }
+  }
+
+}
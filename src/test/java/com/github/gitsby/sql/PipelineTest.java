@@ -0,0 +1,145 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelineTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table country (id int primary key, name varchar(20))");
+      statement.execute("create table city (id int primary key, name varchar(20))");
+      statement.execute("insert into country values (1, 'Norway'), (2, 'Chile'), (3, 'Peru')");
+      statement.execute("insert into city values (1, 'Oslo'), (2, 'Santiago')");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private static SQL countries() {
+    return new SQL().select("id, name").from("country").where("id >= :id").setValue("id", 2);
+  }
+
+  private static SQL city() {
+    return new SQL().select("id, name").from("city").where("id = :id").setValue("id", 1);
+  }
+
+  @Test
+  public void result_sets_text() {
+    Pipeline pipeline = new Pipeline();
+    pipeline.add(countries(), rs -> rs.getString(2));
+    pipeline.add(city(), rs -> rs.getString(2));
+
+    BoundQuery bound = pipeline.bind(Pipeline.Mode.RESULT_SETS);
+
+    assertThat(bound.getQuery().getSql()).isEqualTo(
+        "SELECT id, name\nFROM country\nWHERE id >= ?;\n"
+            + "SELECT id, name\nFROM city\nWHERE id = ?");
+    assertThat(bound.getQuery().getParameterNames()).containsExactly("#0.id", "#1.id");
+    assertThat(bound.getQuery().getIndexes("#1.id")).isEqualTo(new int[]{2});
+  }
+
+  @Test
+  public void union_all_demultiplexes_parts() throws Exception {
+    Pipeline pipeline = new Pipeline();
+    Pipeline.Part<String> countries = pipeline.add(countries(), rs -> rs.getString(2));
+    Pipeline.Part<Integer> cities = pipeline.add(city(), rs -> rs.getInt(1));
+    assertThat(cities.isDone()).isFalse();
+
+    pipeline.execute(connection, Pipeline.Mode.UNION_ALL);
+
+    assertThat(countries.getRows()).containsOnly("Chile", "Peru");
+    assertThat(cities.getRows()).containsExactly(1);
+    assertThat(cities.isDone()).isTrue();
+  }
+
+  @Test
+  public void numbered_placeholders_across_statements() throws Exception {
+    Pipeline pipeline = new Pipeline();
+    Pipeline.Part<String> countries = pipeline.add(
+        countries().dialect(StandardDialect.H2).where("name <> :skip").setValue("skip", "Peru"),
+        rs -> rs.getString(2));
+    Pipeline.Part<String> cities = pipeline.add(city().dialect(StandardDialect.H2),
+                                                rs -> rs.getString(2));
+
+    assertThat(pipeline.bind(Pipeline.Mode.UNION_ALL).getQuery().getSql()).isEqualTo(
+        "SELECT pipeline_q0.*, 0 AS pipeline_part FROM (\n"
+            + "SELECT id, name\nFROM country\nWHERE id >= ?1 AND name <> ?2\n"
+            + ") pipeline_q0\nUNION ALL\n"
+            + "SELECT pipeline_q1.*, 1 AS pipeline_part FROM (\n"
+            + "SELECT id, name\nFROM city\nWHERE id = ?3\n"
+            + ") pipeline_q1");
+    pipeline.execute(connection, Pipeline.Mode.UNION_ALL);
+
+    assertThat(countries.getRows()).containsExactly("Chile");
+    assertThat(cities.getRows()).containsExactly("Oslo");
+  }
+
+  @Test
+  public void union_all_needs_same_select_list() {
+    Pipeline pipeline = new Pipeline();
+    pipeline.add(countries(), rs -> rs.getString(2));
+    pipeline.add(new SQL().select("name, id").from("city"), rs -> rs.getString(1));
+
+    try {
+      pipeline.bind(Pipeline.Mode.UNION_ALL);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).contains("id, name and name, id");
+    }
+    assertThat(pipeline.bind(Pipeline.Mode.RESULT_SETS).getQuery().getSql()).contains("name, id");
+  }
+
+  @Test
+  public void missing_result_sets_fail() throws Exception {
+    Pipeline pipeline = new Pipeline();
+    pipeline.add(countries(), rs -> rs.getString(2));
+    pipeline.add(city(), rs -> rs.getString(2));
+
+    try {
+      pipeline.execute(connection, Pipeline.Mode.RESULT_SETS);
+      fail();
+    } catch (SQLException e) {
+      assertThat(e.getMessage()).contains("Expected 2 result sets");
+    }
+  }
+
+  @Test
+  public void rows_before_execute() {
+    Pipeline.Part<String> part = new Pipeline().add(city(), rs -> rs.getString(2));
+    try {
+      part.getRows();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).contains("not executed");
+    }
+  }
+
+  @Test
+  public void statements_share_dialect() {
+    try {
+      AbstractSQL.bindAll(Arrays.asList(countries(), city().dialect(StandardDialect.H2)),
+                          new String[]{"", ";", ""});
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).contains("different dialects");
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+public class QueryEventTest {
+
+  private static BoundQuery query() {
+    return new SQL()
+        .select("x")
+        .from("system_range(1, 10)")
+        .where("x > :minX")
+        .setValue("minX", 5)
+        .bind();
+  }
+
+  @Test
+  public void disabled_by_default() {
+    assertThat(EventType.getEventType(QueryEvent.class).isEnabled()).isFalse();
+  }
+
+  @Test
+  public void record_phases() throws Exception {
+    Path file = Files.createTempFile("query", ".jfr");
+    String fingerprint;
+    try (Recording recording = new Recording()) {
+      recording.enable(QueryEvent.NAME).withThreshold(Duration.ZERO);
+      recording.start();
+
+      try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:");
+           StatementCache cache = new StatementCache(connection, 10)) {
+        BoundQuery bound = query();
+        fingerprint = bound.getQuery().getFingerprint();
+        assertThat(cache.query(bound, rs -> rs.getInt(1))).containsExactly(6, 7, 8, 9, 10);
+      }
+
+      recording.stop();
+      recording.dump(file);
+    }
+
+    List<String> phases = new ArrayList<>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      if (event.getEventType().getName().equals(QueryEvent.NAME)) {
+        assertThat(event.getString("fingerprint")).isEqualTo(fingerprint);
+        assertThat(event.getInt("placeholderCount")).isEqualTo(1);
+        phases.add(event.getString("phase"));
+      }
+    }
+    Files.delete(file);
+
+    assertThat(phases).containsExactly(QueryEvent.COMPILE, QueryEvent.APPLY, QueryEvent.EXECUTE);
+  }
+
+  @Test
+  public void fingerprint_is_stable() {
+    assertThat(query().getQuery().getFingerprint())
+        .isEqualTo(query().getQuery().getFingerprint())
+        .hasSize(16);
+  }
+
+}
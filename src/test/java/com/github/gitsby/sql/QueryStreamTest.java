@@ -0,0 +1,110 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryStreamTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table test_table (id int primary key)");
+      statement.execute("insert into test_table select x from system_range(1, 1000)");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private static SQL query() {
+    return new SQL()
+        .select("id")
+        .from("test_table")
+        .where("id > :minId")
+        .order_by("id")
+        .setValue("minId", 10);
+  }
+
+  @Test
+  public void stream_rows() throws Exception {
+    AtomicReference<ResultSet> resultSet = new AtomicReference<>();
+
+    try (Stream<Integer> rows = new QueryStream().fetchSize(50).stream(connection, query(), rs -> {
+      resultSet.set(rs);
+      return rs.getInt(1);
+    })) {
+      assertThat(rows.limit(3).collect(Collectors.toList())).containsExactly(11, 12, 13);
+      assertThat(resultSet.get().getStatement().getFetchSize()).isEqualTo(50);
+      assertThat(resultSet.get().getType()).isEqualTo(ResultSet.TYPE_FORWARD_ONLY);
+      assertThat(resultSet.get().isClosed()).isFalse();
+    }
+
+    assertThat(resultSet.get().isClosed()).isTrue();
+  }
+
+  @Test
+  public void close_at_end() throws Exception {
+    AtomicReference<ResultSet> resultSet = new AtomicReference<>();
+    AtomicReference<Statement> statement = new AtomicReference<>();
+
+    List<Integer> rows = new QueryStream().stream(connection, query(), rs -> {
+      resultSet.set(rs);
+      statement.set(rs.getStatement());
+      return rs.getInt(1);
+    }).collect(Collectors.toList());
+
+    assertThat(rows).hasSize(990);
+    assertThat(resultSet.get().isClosed()).isTrue();
+    assertThat(statement.get().isClosed()).isTrue();
+  }
+
+  @Test
+  public void close_on_failure() throws Exception {
+    AtomicReference<ResultSet> resultSet = new AtomicReference<>();
+
+    Stream<String> rows = new QueryStream().stream(connection, query(), rs -> {
+      resultSet.set(rs);
+      return rs.getString("no_such_column");
+    });
+    try {
+      rows.forEach(row -> { });
+      fail();
+    } catch (UncheckedSQLException e) {
+      assertThat((Throwable) e.getCause()).isNotNull();
+    }
+
+    assertThat(resultSet.get().isClosed()).isTrue();
+  }
+
+  @Test
+  public void null_rows() throws Exception {
+    // a mapper may return null, e.g. rs.getString(1) on a NULL column
+    try (Stream<String> rows = new QueryStream().stream(
+        connection, query().where("id <= 12"), rs -> rs.getInt(1) == 11 ? null : "id")) {
+      assertThat(rows.spliterator().hasCharacteristics(Spliterator.NONNULL)).isFalse();
+    }
+    try (Stream<String> rows = new QueryStream().stream(
+        connection, query().where("id <= 12"), rs -> rs.getInt(1) == 11 ? null : "id")) {
+      assertThat(rows.collect(Collectors.toList())).containsExactly(null, "id");
+    }
+  }
+
+}
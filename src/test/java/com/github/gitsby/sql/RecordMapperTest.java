@@ -0,0 +1,134 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordMapperTest {
+
+  public static class Account {
+
+    private long id;
+    private String ownerName;
+    private Integer rank;
+    private boolean active;
+    public BigDecimal balance;
+    public LocalDate openedOn;
+
+    public void setId(long id) {
+      this.id = id;
+    }
+
+    public void setOwnerName(String ownerName) {
+      this.ownerName = ownerName;
+    }
+
+    public void setRank(Integer rank) {
+      this.rank = rank;
+    }
+
+    public void setActive(boolean active) {
+      this.active = active;
+    }
+
+  }
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table account (id bigint primary key, owner_name varchar(20), "
+                        + "rnk int, active boolean, balance decimal(10, 2), opened_on date)");
+      statement.execute("insert into account values "
+                        + "(1, 'ann', 3, true, 10.50, date '2020-01-02'), "
+                        + "(2, 'bob', null, false, 0, date '2021-03-04')");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private List<Account> query(SQL sql) throws Exception {
+    try (Stream<Account> rows = new QueryStream()
+        .stream(connection, sql.from("account").order_by("id"), RecordMapper.of(Account.class))) {
+      return rows.collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void map_by_label() throws Exception {
+    List<Account> accounts = query(new SQL()
+                                       .select("id, owner_name, rnk AS rank, active")
+                                       .select("balance, opened_on"));
+
+    assertThat(accounts).hasSize(2);
+    Account ann = accounts.get(0);
+    assertThat(ann.id).isEqualTo(1L);
+    assertThat(ann.ownerName).isEqualTo("ann");
+    assertThat(ann.rank).isEqualTo(3);
+    assertThat(ann.active).isTrue();
+    assertThat(ann.balance).isEqualTo(new BigDecimal("10.50"));
+    assertThat(ann.openedOn).isEqualTo(LocalDate.of(2020, 1, 2));
+
+    Account bob = accounts.get(1);
+    assertThat(bob.rank).isNull();
+    assertThat(bob.active).isFalse();
+  }
+
+  @Test
+  public void one_plan_per_shape() throws Exception {
+    RecordMapper<Account> mapper = RecordMapper.of(Account.class);
+    assertThat(RecordMapper.of(Account.class)).isSameAs(mapper);
+
+    List<Account> partial = query(new SQL().select("id, owner_name AS ownerName"));
+    query(new SQL().select("id, owner_name AS ownerName"));
+    query(new SQL().select("owner_name"));
+
+    assertThat(partial.get(1).ownerName).isEqualTo("bob");
+    assertThat(partial.get(1).balance).isNull();
+    assertThat(mapper.toString()).contains("shapes=");
+  }
+
+  @Test
+  public void bound_per_result_set() throws Exception {
+    RecordMapper<Account> mapper = RecordMapper.of(Account.class);
+    try (Statement statement = connection.createStatement();
+         ResultSet first = statement.executeQuery("select id, owner_name from account order by id");
+         Statement other = connection.createStatement();
+         ResultSet second = other.executeQuery("select id, rnk AS rank from account order by id")) {
+      RowMapper<Account> names = mapper.forResultSet(first);
+      RowMapper<Account> ranks = mapper.forResultSet(second);
+
+      // interleaved result sets of different shapes keep their own columns
+      first.next();
+      second.next();
+      assertThat(names.map(first).ownerName).isEqualTo("ann");
+      assertThat(ranks.map(second).rank).isEqualTo(3);
+      first.next();
+      second.next();
+      assertThat(mapper.map(first).ownerName).isEqualTo("bob");
+      assertThat(ranks.map(second).rank).isNull();
+    }
+  }
+
+  @Test
+  public void key_ignores_case_and_underscores() {
+    assertThat(RecordMapper.key("OWNER_NAME")).isEqualTo(RecordMapper.key("ownerName"));
+  }
+
+}
@@ -0,0 +1,21 @@
+package com.github.gitsby.sql;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+class RecordingPreparedStatement {
+
+  final List<String> calls = new ArrayList<>();
+
+  final PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+      (proxy, method, args) -> {
+        if (method.getName().startsWith("set")) {
+          calls.add(method.getName() + "(" + args[0] + ", " + args[1] + ")");
+        }
+        return null;
+      });
+
+}
@@ -0,0 +1,208 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+  private Connection connection;
+  private final AtomicLong now = new AtomicLong();
+  private final RowMapper<String> name = rs -> rs.getString(1);
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table country (id int primary key, name varchar(20))");
+      statement.execute("create table city (id int primary key, country_id int, name varchar(20))");
+      statement.execute("insert into country values (1, 'Norway'), (2, 'Chile')");
+      statement.execute("insert into city values (1, 1, 'Oslo'), (2, 2, 'Santiago')");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private ResultCache cache(long maximumWeight) {
+    return new ResultCache(maximumWeight, Duration.ofMinutes(1), now::get);
+  }
+
+  private static SQL countries(int minId) {
+    return new SQL().select("name").from("country").where("id >= :minId").order_by("id")
+        .setValue("minId", minId);
+  }
+
+  private void execute(String sql) throws Exception {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+
+  @Test
+  public void hit_returns_cached_rows() throws Exception {
+    ResultCache cache = cache(100);
+
+    List<String> first = cache.query(connection, countries(1), name);
+    execute("insert into country values (3, 'Peru')");
+    List<String> second = cache.query(connection, countries(1), name);
+
+    assertThat(second).isSameAs(first).containsExactly("Norway", "Chile");
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(1);
+    // other values are another entry
+    assertThat(cache.query(connection, countries(2), name)).containsExactly("Chile", "Peru");
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void entries_expire() throws Exception {
+    ResultCache cache = cache(100);
+
+    cache.query(connection, countries(1), name);
+    execute("insert into country values (3, 'Peru')");
+    now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+    assertThat(cache.query(connection, countries(1), name)).hasSize(2);
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertThat(cache.query(connection, countries(1), name)).hasSize(3);
+    assertThat(cache.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void ttl_per_template() throws Exception {
+    ResultCache cache = cache(100).ttl(countries(1).compile(), Duration.ZERO);
+
+    cache.query(connection, countries(1), name);
+    cache.query(connection, countries(1), name);
+
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void invalidate_by_joined_table() throws Exception {
+    ResultCache cache = cache(100);
+    SQL cities = new SQL().select("c.name").from("country k").join("city c ON c.country_id = k.id")
+        .order_by("c.id");
+
+    cache.query(connection, cities, name);
+    cache.query(connection, countries(1), name);
+    execute("update city set name = 'Bergen' where id = 1");
+    cache.invalidate("CITY");
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.query(connection, cities, name)).containsExactly("Bergen", "Santiago");
+  }
+
+  @Test
+  public void update_invalidates_its_table() throws Exception {
+    ResultCache cache = cache(100);
+
+    cache.query(connection, countries(1), name);
+    int updated = cache.executeUpdate(
+        connection, new SQL().update("country").set("name = :name").where("id = 2")
+            .setValue("name", "Peru"));
+
+    assertThat(updated).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.query(connection, countries(1), name)).containsExactly("Norway", "Peru");
+  }
+
+  @Test
+  public void evicts_least_recently_used_by_weight() throws Exception {
+    // every entry weighs 1 + its rows, so 3 for the first two queries and 2 for the last
+    ResultCache cache = cache(6);
+
+    cache.query(connection, countries(1), name);
+    now.incrementAndGet();
+    cache.query(connection, countries(0), name);
+    now.incrementAndGet();
+    cache.query(connection, countries(1), name);
+    now.incrementAndGet();
+    cache.query(connection, countries(2), name);
+
+    assertThat(cache.evictionCount()).isEqualTo(1);
+    assertThat(cache.weight()).isEqualTo(5);
+    cache.query(connection, countries(1), name);
+    assertThat(cache.hitCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void commit_invalidates_rows_read_before_it() throws Exception {
+    ResultCache cache = cache(100);
+    String url = "jdbc:h2:mem:result_cache_tx";
+    try (Connection writer = DriverManager.getConnection(url);
+         Connection reader = DriverManager.getConnection(url)) {
+      try (Statement statement = writer.createStatement()) {
+        statement.execute("create table country (id int primary key, name varchar(20))");
+        statement.execute("insert into country values (1, 'Norway'), (2, 'Chile')");
+      }
+      writer.setAutoCommit(false);
+
+      cache.executeUpdate(writer, new SQL().update("country").set("name = :name").where("id = 2")
+          .setValue("name", "Peru"));
+      // read between the write and its commit, the old rows are cached
+      assertThat(cache.query(reader, countries(1), name)).containsExactly("Norway", "Chile");
+      cache.commit(writer);
+
+      assertThat(cache.size()).isEqualTo(0);
+      assertThat(cache.query(reader, countries(1), name)).containsExactly("Norway", "Peru");
+    }
+  }
+
+  @Test
+  public void tables_of_statement() {
+    SQL sql = new SQL();
+    sql.with("recent").select("id").from("Orders o, \"Customer\" c").where("o.created > :since");
+    sql.select("*").from("recent r").leftJoin("(SELECT 1) s ON true")
+        .innerJoin("order_line l ON l.order_id = r.id");
+
+    assertThat(sql.tables()).containsOnly("orders", "customer", "order_line");
+  }
+
+  @Test
+  public void entries_belong_to_mapper_instance() throws Exception {
+    ResultCache cache = cache(100);
+    RowMapper<String> names = new DelegatingMapper<>(rs -> rs.getString(1));
+    RowMapper<Integer> lengths = new DelegatingMapper<>(rs -> rs.getString(1).length());
+
+    List<String> first = cache.query(connection, countries(1), names);
+    List<Integer> second = cache.query(connection, countries(1), lengths);
+
+    assertThat(first).containsExactly("Norway", "Chile");
+    assertThat(second).containsExactly(6, 5);
+    assertThat(cache.hitCount()).isEqualTo(0);
+    assertThat(cache.query(connection, countries(1), lengths)).isSameAs(second);
+  }
+
+  // mappers of one class that map to different types, like RecordMapper.of(A) and of(B)
+  private static final class DelegatingMapper<T> implements RowMapper<T> {
+
+    private final RowMapper<T> delegate;
+
+    private DelegatingMapper(RowMapper<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public T map(ResultSet rs) throws SQLException {
+      return delegate.map(rs);
+    }
+
+  }
+
+}
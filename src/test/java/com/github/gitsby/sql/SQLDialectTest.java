@@ -0,0 +1,89 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class SQLDialectTest {
+
+  private static SQL query(Dialect dialect) {
+    SQL sql = new SQL()
+        .dialect(dialect)
+        .select("x")
+        .from("with_table")
+        .where("x <> :param1 and x in (:ids)")
+        .order_by("x")
+        .limit(2)
+        .offset(1)
+        .setValue("param1", 7)
+        .setValue("ids", Arrays.asList(3, 5, 7, 9));
+
+    sql.with("with_table")
+        .select("x")
+        .from("system_range(1, 20)")
+        .where("x > :param2 and x <> :param1")
+        .setValue("param2", 2);
+
+    return sql;
+  }
+
+  @Test
+  public void dollar_numbered_binds_once() throws Exception {
+    BoundQuery bound = query(Dialect.POSTGRESQL_NUMBERED).bind();
+
+    assertThat(bound.getQuery().getSql()).isEqualTo(
+        "WITH with_table as (\nSELECT x\nFROM system_range(1, 20)\nWHERE x > $1 and x <> $2\n)\n"
+        + "SELECT x\nFROM with_table\nWHERE x <> $2 and x in ($3, $4, $5, $6)\nORDER BY x\n"
+        + "LIMIT $7\nOFFSET $8");
+    assertThat(bound.getQuery().getIndexes("param1")).isEqualTo(new int[]{2});
+    assertThat(bound.getQuery().getIndexes("ids")).isEqualTo(new int[]{3, 4, 5, 6});
+    assertThat(bound.getQuery().getPlaceholderCount()).isEqualTo(8);
+
+    RecordingPreparedStatement recording = new RecordingPreparedStatement();
+    bound.applyTo(recording.ps);
+    assertThat(recording.calls).containsExactly(
+        "setInt(1, 2)", "setInt(2, 7)", "setInt(3, 3)", "setInt(4, 5)", "setInt(5, 7)",
+        "setInt(6, 9)", "setLong(7, 2)", "setLong(8, 1)");
+  }
+
+  @Test
+  public void offset_fetch() {
+    SQL sql = new SQL()
+        .dialect(Dialect.SQL2008)
+        .select("1")
+        .from("test_table")
+        .order_by("1")
+        .limit(10)
+        .offset(20);
+
+    assertThat(sql.compile().getSql()).isEqualTo(
+        "SELECT 1\nFROM test_table\nORDER BY 1\nOFFSET ? ROWS\nFETCH FIRST ? ROWS ONLY");
+    assertThat(sql.compile().getIndexes(SQL.OFFSET_PARAMETER)).isEqualTo(new int[]{1});
+    assertThat(new SQL().dialect(Dialect.SQL2008).select("1").limit("5").compile().getSql())
+        .isEqualTo("SELECT 1\nFETCH FIRST 5 ROWS ONLY");
+  }
+
+  @Test
+  public void execute_numbered_in_h2() throws Exception {
+    BoundQuery bound = query(Dialect.H2).bind();
+    assertThat(bound.getQuery().getSql()).contains("x <> ?2 and x in (?3, ?4, ?5, ?6)");
+
+    try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:");
+         PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql());
+         ResultSet rs = bound.applyTo(ps).executeQuery()) {
+      List<Integer> rows = new ArrayList<>();
+      while (rs.next()) {
+        rows.add(rs.getInt(1));
+      }
+      assertThat(rows).containsExactly(5, 9);
+    }
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class SQLForkTest {
+
+  private static SQL base() {
+    SQL sql = new SQL()
+        .select("x.id")
+        .from("with_table x")
+        .where("x.status = :status")
+        .setValue("status", "new");
+
+    sql.with("with_table")
+        .select("id, status")
+        .from("test_table")
+        .where("owner_id = :owner");
+
+    return sql;
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void frozen_rejects_clause() {
+    base().freeze().where("x.id > 0");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void frozen_rejects_value() {
+    base().freeze().setValue("owner", 1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void frozen_rejects_with() {
+    base().freeze().with("with_table2");
+  }
+
+  @Test
+  public void fork_adds_to_frozen_base() {
+    SQL base = base().freeze();
+    String baseSql = base.compile().getSql();
+
+    SQL child = base.fork()
+        .where("x.id > :minId")
+        .order_by("x.id")
+        .setValue("minId", 10)
+        .setValue("owner", 7);
+
+    assertThat(child.isFrozen()).isFalse();
+    assertThat(base.compile().getSql()).isEqualTo(baseSql);
+    assertThat(base.valueMap).hasSize(1);
+    assertThat(child.compile().getSql()).isEqualTo(
+        "WITH with_table as (\nSELECT id, status\nFROM test_table\nWHERE owner_id = ?\n)\n"
+        + "SELECT x.id\nFROM with_table x\nWHERE x.status = ? AND x.id > ?\nORDER BY x.id");
+    assertThat(child.bind().getQuery().getParameterNames())
+        .containsExactly("owner", "status", "minId");
+  }
+
+  @Test
+  public void fork_and_parent_are_independent() {
+    SQL parent = new SQL().select("1").from("test_table").where("a = 1");
+    parent.with("with_table").select("2");
+
+    SQL child = parent.fork().where("b = 2");
+    parent.where("c = 3").setValue("param1", "someValue1");
+    parent.with("with_table2").select("3");
+
+    assertThat(child.compile().getSql()).isEqualTo(
+        "WITH with_table as (\nSELECT 2\n)\nSELECT 1\nFROM test_table\nWHERE a = 1 AND b = 2");
+    assertThat(child.valueMap).isEmpty();
+    assertThat(parent.compile().getSql()).endsWith("WHERE a = 1 AND c = 3");
+  }
+
+  @Test
+  public void same_template_for_forks() {
+    SQL base = base().freeze();
+    TemplateCache cache = new TemplateCache(10);
+
+    CompiledQuery first = base.fork().setValue("owner", 1).compile(cache);
+    CompiledQuery second = base.fork().setValue("owner", 2).compile(cache);
+
+    assertThat(second).isSameAs(first);
+  }
+
+  @Test
+  public void share_frozen_between_threads() throws Exception {
+    SQL base = base().freeze();
+    String expected = base.fork().where("x.id = :id").compile().getSql();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        int id = i;
+        Callable<String> task = () -> base.fork()
+            .where("x.id = :id")
+            .setValue("id", id)
+            .setValue("owner", id)
+            .compile()
+            .getSql();
+        results.add(executor.submit(task));
+      }
+      for (Future<String> result : results) {
+        assertThat(result.get()).isEqualTo(expected);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
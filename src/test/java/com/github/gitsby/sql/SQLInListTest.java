@@ -0,0 +1,167 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class SQLInListTest {
+
+  @Test
+  public void expand_collection_to_bucket() throws Exception {
+    SQL sql = new SQL()
+        .select("1")
+        .from("test_table")
+        .where("id in (:ids)")
+        .where("column1 = :param1")
+        .setValue("ids", Arrays.asList(10, 20, 30))
+        .setValue("param1", "someValue1");
+
+    BoundQuery bound = sql.bind();
+
+    assertThat(bound.getQuery().getSql()).isEqualToIgnoringCase(
+        "select 1\nfrom test_table\nwhere id in (?, ?, ?, ?) and column1 = ?");
+    assertThat(bound.getQuery().getIndexes("ids")).isEqualTo(new int[]{1, 2, 3, 4});
+    assertThat(bound.getQuery().getIndexes("param1")).isEqualTo(new int[]{5});
+
+    RecordingPreparedStatement recording = new RecordingPreparedStatement();
+    bound.applyTo(recording.ps);
+
+    assertThat(recording.calls).containsExactly(
+        "setInt(1, 10)", "setInt(2, 20)", "setInt(3, 30)", "setInt(4, 30)",
+        "setString(5, someValue1)");
+  }
+
+  @Test
+  public void expand_every_occurrence() {
+    SQL sql = new SQL()
+        .select("1")
+        .where("id in (:ids) or parent_id in (:ids)")
+        .setValue("ids", Arrays.asList(1, 2));
+
+    sql.with("with_table")
+        .select("1")
+        .where("column1 = :param1");
+
+    CompiledQuery query = sql.compile();
+
+    assertThat(query.getSql().toLowerCase()).endsWith("where id in (?, ?) or parent_id in (?, ?)");
+    assertThat(query.getIndexes("param1")).isEqualTo(new int[]{1});
+    assertThat(query.getIndexes("ids")).isEqualTo(new int[]{2, 3, 4, 5});
+  }
+
+  @Test
+  public void bucket_sizes() {
+    assertThat(SQL.bucket(0)).isEqualTo(1);
+    assertThat(SQL.bucket(1)).isEqualTo(1);
+    assertThat(SQL.bucket(2)).isEqualTo(2);
+    assertThat(SQL.bucket(3)).isEqualTo(4);
+    assertThat(SQL.bucket(8)).isEqualTo(8);
+    assertThat(SQL.bucket(9)).isEqualTo(16);
+  }
+
+  @Test
+  public void same_bucket_same_template() {
+    TemplateCache cache = new TemplateCache(10);
+
+    CompiledQuery five = new SQL().select("1").where("id in (:ids)")
+        .setValue("ids", Arrays.asList(1, 2, 3, 4, 5)).compile(cache);
+    CompiledQuery seven = new SQL().select("1").where("id in (:ids)")
+        .setValue("ids", Arrays.asList(1, 2, 3, 4, 5, 6, 7)).compile(cache);
+    CompiledQuery nine = new SQL().select("1").where("id in (:ids)")
+        .setValue("ids", Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9)).compile(cache);
+
+    assertThat(seven).isSameAs(five);
+    assertThat(nine).isNotSameAs(five);
+    assertThat(nine.getPlaceholderCount()).isEqualTo(16);
+  }
+
+  @Test
+  public void empty_collection_fails() throws Exception {
+    // NOT IN (NULL) matches no row, so binding null would turn "none excluded" into "nothing"
+    BoundQuery bound = new SQL()
+        .select("1")
+        .where("id not in (:ids)")
+        .setValue("ids", Collections.emptyList())
+        .bind();
+
+    try {
+      bound.applyTo(new RecordingPreparedStatement().ps);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).contains("ids is an empty collection");
+    }
+  }
+
+  @Test
+  public void large_lists_grow_linearly() {
+    assertThat(SQL.bucket(1024)).isEqualTo(1024);
+    assertThat(SQL.bucket(1025)).isEqualTo(2048);
+    assertThat(SQL.bucket(20000)).isEqualTo(20480);
+    assertThat(SQL.bucket(32767)).isEqualTo(32767);
+
+    try {
+      new SQL().select("1").where("id in (:ids)")
+          .setValue("ids", Collections.nCopies(40000, 1)).compile();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).contains("ids has 40000 values");
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void too_many_values_for_compiled_bucket() throws Exception {
+    CompiledQuery query = new SQL()
+        .select("1")
+        .where("id in (:ids)")
+        .setValue("ids", Arrays.asList(1, 2))
+        .compile();
+
+    query.bind().set("ids", Arrays.asList(1, 2, 3)).applyTo(new RecordingPreparedStatement().ps);
+  }
+
+  @Test
+  public void execute_in_list_and_array() throws Exception {
+    try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:")) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("create table test_table as select x as id from system_range(1, 20)");
+      }
+
+      BoundQuery in = new SQL()
+          .select("id")
+          .from("test_table")
+          .where("id in (:ids)")
+          .order_by("id")
+          .setValue("ids", Arrays.asList(3, 5, 7))
+          .bind();
+      BoundQuery any = new SQL()
+          .select("id")
+          .from("test_table")
+          .where("id = any(:ids)")
+          .order_by("id")
+          .setValue("ids", SqlArray.of("bigint", 3L, 5L, 7L))
+          .bind();
+
+      for (BoundQuery bound : Arrays.asList(in, any)) {
+        try (PreparedStatement ps = connection.prepareStatement(bound.getQuery().getSql());
+             ResultSet rs = bound.applyTo(ps).executeQuery()) {
+          List<Integer> ids = new ArrayList<>();
+          while (rs.next()) {
+            ids.add(rs.getInt(1));
+          }
+          assertThat(ids).containsExactly(3, 5, 7);
+        }
+      }
+    }
+  }
+
+}
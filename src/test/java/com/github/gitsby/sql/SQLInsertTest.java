@@ -0,0 +1,54 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class SQLInsertTest {
+
+  @Test
+  public void insert_single_row() {
+    CompiledQuery query = new SQL()
+        .insertInto("test_table")
+        .columns("column1, column2")
+        .values(":param1, :param2")
+        .compile();
+
+    assertThat(query.getSql()).isEqualToIgnoringCase(
+        "insert into test_table (column1, column2)\nvalues (?, ?)");
+    assertThat(query.getParameterNames()).containsExactly("param1", "param2");
+  }
+
+  @Test
+  public void insert_multiple_rows() {
+    CompiledQuery query = new SQL()
+        .insertInto("test_table")
+        .columns("column1")
+        .columns("column2")
+        .values(":param1, 'a:b'")
+        .values(":param2, :param1")
+        .compile();
+
+    assertThat(query.getSql()).isEqualToIgnoringCase(
+        "insert into test_table (column1, column2)\nvalues (?, 'a:b'), (?, ?)");
+    assertThat(query.getIndexes("param1")).isEqualTo(new int[]{1, 3});
+  }
+
+  @Test
+  public void insert_with() {
+    SQL sql = new SQL()
+        .insertInto("test_table")
+        .columns("column1")
+        .values("(select max(id) from with_table)");
+
+    sql.with("with_table")
+        .select("id")
+        .from("test_table2")
+        .where("column1 = :param1");
+
+    assertThat(sql.compile().getSql()).isEqualToIgnoringCase(
+        "with with_table as (\nselect id\nfrom test_table2\nwhere column1 = ?\n)"
+            + "\ninsert into test_table (column1)\nvalues ((select max(id) from with_table))");
+  }
+
+}
@@ -13,7 +13,7 @@ public class SQLSelectTest {
     sql.select("1");
     sql.from("test_table x");
     sql.innerJoin("test_table2 x1 on x1.col = x.col");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "select 1\nfrom test_table x\ninner join test_table2 x1 on x1.col = x.col");
   }
@@ -24,7 +24,7 @@ public class SQLSelectTest {
     sql.select("1");
     sql.from("test_table x");
     sql.leftJoin("test_table2 x1 on x1.col = x.col");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "select 1\nfrom test_table x\nleft join test_table2 x1 on x1.col = x.col");
   }
@@ -35,7 +35,7 @@ public class SQLSelectTest {
     sql.select("1");
     sql.from("test_table x");
     sql.rightjoin("test_table2 x1 on x1.col = x.col");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "select 1\nfrom test_table x\nright join test_table2 x1 on x1.col = x.col");
   }
@@ -46,7 +46,7 @@ public class SQLSelectTest {
     sql.select("1");
     sql.from("test_table x");
     sql.outerjoin("test_table2 x1 on x1.col = x.col");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "select 1\nfrom test_table x\nouter join test_table2 x1 on x1.col = x.col");
   }
@@ -59,7 +59,7 @@ public class SQLSelectTest {
     sql.outerjoin("test_table2 x1 on x1.col = x.col");
     sql.leftJoin("test_table3 x2 on x2.col = x.col");
     sql.innerJoin("test_table4 x3 on x3.col = x.col");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1\nfrom test_table x"
                                                    + "\nouter join test_table2 x1 on x1.col = x.col"
                                                    + "\nleft join test_table3 x2 on x2.col = x.col"
@@ -72,7 +72,7 @@ public class SQLSelectTest {
     sql.select("1");
     sql.from("test_table");
     sql.order_by("1");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1\nfrom test_table\norder by 1");
   }
 
@@ -82,7 +82,7 @@ public class SQLSelectTest {
     sql.select("1");
     sql.from("test_table");
     sql.group_by("asd");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1\nfrom test_table\ngroup by asd");
   }
 
@@ -93,7 +93,7 @@ public class SQLSelectTest {
     sql.from("test_table");
     sql.group_by("asd");
     sql.having("asd > 0");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery)
         .isEqualToIgnoringCase("select 1\nfrom test_table\ngroup by asd\nhaving asd > 0");
   }
@@ -106,17 +106,69 @@ public class SQLSelectTest {
     sql.from("test_table");
     sql.limit("1");
     sql.offset("5");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1\nfrom test_table\nlimit 1\noffset 5");
   }
 
+  @Test
+  public void limit_offset_parameters() throws Exception {
+    SQL sql = new SQL();
+    sql.select("1");
+    sql.from("test_table");
+    sql.where("column1 = :param1");
+    sql.limit(20);
+    sql.offset(40);
+    sql.setValue("param1", "someValue1");
+
+    BoundQuery bound = sql.bind();
+    assertThat(bound.getQuery().getSql())
+        .isEqualToIgnoringCase("select 1\nfrom test_table\nwhere column1 = ?\nlimit ?\noffset ?");
+    assertThat(bound.getQuery().getParameterNames())
+        .containsExactly("param1", SQL.LIMIT_PARAMETER, SQL.OFFSET_PARAMETER);
+    assertThat(sql.toString())
+        .isEqualToIgnoringCase("select 1\nfrom test_table\nwhere column1 = :param1\nlimit 20\noffset 40");
+
+    RecordingPreparedStatement recording = new RecordingPreparedStatement();
+    bound.applyTo(recording.ps);
+    assertThat(recording.calls)
+        .containsExactly("setString(1, someValue1)", "setLong(2, 20)", "setLong(3, 40)");
+  }
+
+  @Test
+  public void pages_share_template() {
+    TemplateCache cache = new TemplateCache(10);
+
+    CompiledQuery first = new SQL().select("1").from("test_table").limit(10).offset(0)
+        .compile(cache);
+    CompiledQuery deep = new SQL().select("1").from("test_table").limit(50).offset(100000)
+        .compile(cache);
+
+    assertThat(deep).isSameAs(first);
+  }
+
+  @Test
+  public void with_table_limit_is_qualified() {
+    SQL sql = new SQL();
+    sql.with("with_table")
+        .select("1")
+        .from("test_table")
+        .limit(5);
+    sql.select("1")
+        .from("with_table")
+        .limit(10);
+
+    BoundQuery bound = sql.bind();
+    assertThat(bound.getQuery().getParameterNames())
+        .containsExactly("with_table." + SQL.LIMIT_PARAMETER, SQL.LIMIT_PARAMETER);
+  }
+
   @Test
   public void limit() {
     SQL sql = new SQL();
     sql.select("1");
     sql.from("test_table");
     sql.limit("1");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1\nfrom test_table\nlimit 1");
   }
 
@@ -126,7 +178,7 @@ public class SQLSelectTest {
     SQL sql = new SQL();
     sql.select("1");
     sql.from("test_table");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1\nfrom test_table");
   }
 
@@ -134,7 +186,7 @@ public class SQLSelectTest {
   public void select() {
     SQL sql = new SQL();
     sql.select("1!");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1!");
   }
 
@@ -142,7 +194,7 @@ public class SQLSelectTest {
   public void select_distinct() {
     SQL sql = new SQL();
     sql.selectDistinct("1!");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select distinct 1!");
   }
 
@@ -152,7 +204,7 @@ public class SQLSelectTest {
     sql.select("1!");
     sql.select("2");
     sql.select("3");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1!, 2, 3");
   }
 
@@ -167,7 +219,7 @@ public class SQLSelectTest {
         .setValue("param1", "someValue1")
         .setValue("param2", "someValue2");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase("select 1"
                                                    + "\nfrom test_table"
                                                    + "\nwhere column1 = ?"
@@ -175,6 +227,23 @@ public class SQLSelectTest {
                                                    + " and column3 = ?");
   }
 
+  @Test
+  public void namedParameter_ignored_in_quotes_and_casts() {
+    CompiledQuery query = new SQL()
+        .select("':not_param', \"col:umn\"")
+        .from("test_table")
+        .where("column1 = :param1::int")
+        .where("column2 = ':not_param' || :param2")
+        .compile();
+
+    assertThat(query.getSql()).isEqualTo("SELECT ':not_param', \"col:umn\""
+                                             + "\nFROM test_table"
+                                             + "\nWHERE column1 = ?::int"
+                                             + " AND column2 = ':not_param' || ?");
+    assertThat(query.getParameterNames()).containsOnly("param1", "param2");
+    assertThat(query.getIndexes("param2")).isEqualTo(new int[]{2});
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void setValue_more_than_once() {
     new SQL()
@@ -196,19 +265,19 @@ public class SQLSelectTest {
         .setValue("param1", "someValue1")
         .setValue("param2", "someValue2");
 
-    sql.compile();
+    CompiledQuery query = sql.compile();
 
-    assertThat(sql.indexMap).isNotNull();
-    assertThat(sql.indexMap.size()).isEqualTo(2);
+    assertThat(query.getParameterNames()).isNotNull();
+    assertThat(query.getParameterNames().size()).isEqualTo(2);
     
-    assertThat(sql.indexMap.get("param1")).isNotNull();
-    assertThat(sql.indexMap.get("param1")).hasSize(2);
-    assertThat(sql.indexMap.get("param1").get(0)).isEqualTo(1);
-    assertThat(sql.indexMap.get("param1").get(1)).isEqualTo(3);
+    assertThat(query.getIndexes("param1")).isNotNull();
+    assertThat(query.getIndexes("param1")).hasSize(2);
+    assertThat(query.getIndexes("param1")[0]).isEqualTo(1);
+    assertThat(query.getIndexes("param1")[1]).isEqualTo(3);
 
-    assertThat(sql.indexMap.get("param2")).isNotNull();
-    assertThat(sql.indexMap.get("param2")).hasSize(1);
-    assertThat(sql.indexMap.get("param2").get(0)).isEqualTo(2);
+    assertThat(query.getIndexes("param2")).isNotNull();
+    assertThat(query.getIndexes("param2")).hasSize(1);
+    assertThat(query.getIndexes("param2")[0]).isEqualTo(2);
 
     assertThat(sql.valueMap).isNotNull();
     assertThat(sql.valueMap.size()).isEqualTo(2);
@@ -224,7 +293,7 @@ public class SQLSelectTest {
     sql.select("2");
     sql.from("test_table");
     sql.where("test_table.column1 = 'asd'");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery)
         .isEqualToIgnoringCase("select 1, 2\nfrom test_table\nwhere test_table.column1 = 'asd'");
   }
@@ -237,7 +306,7 @@ public class SQLSelectTest {
     sql.from("test_table");
     sql.where("test_table.column1 = 'asd'");
     sql.where("test_table.column2 >= 42");
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "select 1, 2\nfrom test_table\nwhere test_table.column1 = 'asd' and test_table.column2 >= 42");
   }
@@ -0,0 +1,70 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class SQLUpdateTest {
+
+  @Test
+  public void update() {
+    CompiledQuery query = new SQL()
+        .update("test_table")
+        .set("column1 = :param1")
+        .set("column2 = column2 + 1")
+        .where("id = :id")
+        .compile();
+
+    assertThat(query.getSql()).isEqualToIgnoringCase(
+        "update test_table\nset column1 = ?, column2 = column2 + 1\nwhere id = ?");
+    assertThat(query.getParameterNames()).containsExactly("param1", "id");
+  }
+
+  @Test
+  public void update_returning() {
+    CompiledQuery query = new SQL()
+        .update("test_table")
+        .set("column1 = :param1")
+        .where("id = :id")
+        .returning("id")
+        .returning("column1")
+        .compile();
+
+    assertThat(query.getSql()).isEqualToIgnoringCase(
+        "update test_table\nset column1 = ?\nwhere id = ?\nreturning id, column1");
+  }
+
+  @Test
+  public void update_with() {
+    SQL sql = new SQL()
+        .update("test_table")
+        .set("column1 = :param1")
+        .where("id in (select id from with_table)");
+
+    sql.with("with_table")
+        .select("id")
+        .from("test_table2")
+        .where("column2 = :param2 and column1 = :param1");
+
+    CompiledQuery query = sql.compile();
+
+    assertThat(query.getSql()).isEqualToIgnoringCase(
+        "with with_table as (\nselect id\nfrom test_table2\nwhere column2 = ? and column1 = ?\n)"
+            + "\nupdate test_table\nset column1 = ?\nwhere id in (select id from with_table)");
+    assertThat(query.getIndexes("param1")).isEqualTo(new int[]{2, 3});
+  }
+
+  @Test
+  public void delete() {
+    CompiledQuery query = new SQL()
+        .deleteFrom("test_table")
+        .where("id = :id")
+        .where("column1 = 'a:b'")
+        .returning("id")
+        .compile();
+
+    assertThat(query.getSql()).isEqualToIgnoringCase(
+        "delete from test_table\nwhere id = ? and column1 = 'a:b'\nreturning id");
+  }
+
+}
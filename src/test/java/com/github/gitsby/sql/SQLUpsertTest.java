@@ -0,0 +1,177 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class SQLUpsertTest {
+
+  private static SQL upsert() {
+    return new SQL()
+        .upsertInto("test_table")
+        .columns("id, name")
+        .values(":id, :name")
+        .onConflict("id")
+        .set("name = " + SQL.excluded("name"));
+  }
+
+  @Test
+  public void upsert_on_conflict() {
+    CompiledQuery query = upsert()
+        .dialect(Dialect.POSTGRESQL)
+        .returning("id")
+        .compile();
+
+    assertThat(query.getSql()).isEqualTo("INSERT INTO test_table (id, name)"
+                                             + "\nVALUES (?, ?)"
+                                             + "\nON CONFLICT (id) DO UPDATE"
+                                             + "\nSET name = EXCLUDED.name"
+                                             + "\nRETURNING id");
+    assertThat(query.getParameterNames()).containsExactly("id", "name");
+  }
+
+  @Test
+  public void upsert_on_conflict_do_nothing() {
+    CompiledQuery query = new SQL()
+        .upsertInto("test_table")
+        .columns("id, name")
+        .values(":id, :name")
+        .onConflict("id")
+        .dialect(Dialect.POSTGRESQL)
+        .compile();
+
+    assertThat(query.getSql()).isEqualTo("INSERT INTO test_table (id, name)"
+                                             + "\nVALUES (?, ?)"
+                                             + "\nON CONFLICT (id) DO NOTHING");
+  }
+
+  @Test
+  public void upsert_on_conflict_where() {
+    CompiledQuery query = upsert()
+        .where("test_table.name <> :name")
+        .dialect(Dialect.POSTGRESQL)
+        .compile();
+
+    assertThat(query.getSql()).endsWith("\nSET name = EXCLUDED.name"
+                                            + "\nWHERE test_table.name <> ?");
+    assertThat(query.getIndexes("name")).isEqualTo(new int[]{2, 3});
+  }
+
+  @Test
+  public void upsert_merge() {
+    CompiledQuery query = upsert()
+        .values(":id2, :name2")
+        .compile();
+
+    assertThat(query.getSql()).isEqualTo("MERGE INTO test_table"
+                                             + "\nUSING (VALUES (?, ?), (?, ?)) AS EXCLUDED (id, name)"
+                                             + "\nON test_table.id = EXCLUDED.id"
+                                             + "\nWHEN MATCHED THEN UPDATE"
+                                             + "\nSET name = EXCLUDED.name"
+                                             + "\nWHEN NOT MATCHED THEN INSERT (id, name)"
+                                             + " VALUES (EXCLUDED.id, EXCLUDED.name)");
+  }
+
+  @Test
+  public void upsert_merge_needs_conflict_target() {
+    try {
+      new SQL().upsertInto("test_table").columns("id, name").values(":id, :name").compile();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("MERGE upsert needs a conflict target");
+    }
+  }
+
+  @Test
+  public void upsert_merge_needs_columns() {
+    try {
+      new SQL().upsertInto("test_table").values(":id, :name").onConflict("id").compile();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("MERGE upsert needs columns");
+    }
+  }
+
+  @Test
+  public void upsert_on_conflict_update_needs_conflict_target() {
+    try {
+      new SQL().upsertInto("test_table").columns("id, name").values(":id, :name")
+          .set("name = " + SQL.excluded("name")).dialect(Dialect.POSTGRESQL).compile();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("ON CONFLICT DO UPDATE needs a conflict target");
+    }
+  }
+
+  @Test
+  public void upsert_do_nothing_rejects_where() {
+    try {
+      new SQL().upsertInto("test_table").columns("id, name").values(":id, :name")
+          .onConflict("id").where("test_table.name <> 'x'").dialect(Dialect.POSTGRESQL).compile();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("Upsert WHERE needs set()");
+    }
+  }
+
+  @Test
+  public void upsert_merge_rejects_returning() {
+    try {
+      upsert().returning("id").compile();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("MERGE upsert does not support RETURNING");
+    }
+  }
+
+  @Test
+  public void upsert_dialect_is_part_of_shape() {
+    TemplateCache cache = new TemplateCache(10);
+
+    CompiledQuery merge = upsert().compile(cache);
+    CompiledQuery onConflict = upsert().dialect(Dialect.POSTGRESQL).compile(cache);
+
+    assertThat(onConflict.getSql()).isNotEqualTo(merge.getSql());
+  }
+
+  @Test
+  public void upsert_batch() throws Exception {
+    try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:")) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("create table test_table (id int primary key, name varchar(20))");
+        statement.execute("insert into test_table values (1, 'old1'), (2, 'old2')");
+      }
+
+      List<Map<String, Object>> rows = new ArrayList<>();
+      for (int i = 2; i <= 4; i++) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", i);
+        row.put("name", "new" + i);
+        rows.add(row);
+      }
+
+      BatchResult result = new Batch(upsert().dialect(Dialect.H2).compile())
+          .execute(connection, rows);
+
+      assertThat(result.isSuccessful()).isTrue();
+      try (Statement statement = connection.createStatement();
+           ResultSet rs = statement.executeQuery("select name from test_table order by id")) {
+        List<String> names = new ArrayList<>();
+        while (rs.next()) {
+          names.add(rs.getString(1));
+        }
+        assertThat(names).containsExactly("old1", "new2", "new3", "new4");
+      }
+    }
+  }
+
+}
@@ -3,6 +3,10 @@ package com.github.gitsby.sql;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Map;
 import org.junit.Test;
 
 public class SQLWithTest {
@@ -29,7 +33,8 @@ public class SQLWithTest {
         .join("test_table4 x1 on x1.col = x.col")
         .where("x1.col = :param1");
 
-    String sqlQuery = sql.compile();
+    CompiledQuery query = sql.compile();
+    String sqlQuery = query.getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "WITH with_table_1 as (\n"
@@ -47,13 +52,13 @@ public class SQLWithTest {
             + "SELECT 1"
     );
 
-    assertThat(sql.indexMap.get("param1")).isNotNull();
-    assertThat(sql.indexMap.get("param1")).hasSize(2);
-    assertThat(sql.indexMap.get("param1").get(0)).isEqualTo(1);
-    assertThat(sql.indexMap.get("param1").get(1)).isEqualTo(3);
-    assertThat(sql.indexMap.get("param2")).isNotNull();
-    assertThat(sql.indexMap.get("param2")).hasSize(1);
-    assertThat(sql.indexMap.get("param2").get(0)).isEqualTo(2);
+    assertThat(query.getIndexes("param1")).isNotNull();
+    assertThat(query.getIndexes("param1")).hasSize(2);
+    assertThat(query.getIndexes("param1")[0]).isEqualTo(1);
+    assertThat(query.getIndexes("param1")[1]).isEqualTo(3);
+    assertThat(query.getIndexes("param2")).isNotNull();
+    assertThat(query.getIndexes("param2")).hasSize(1);
+    assertThat(query.getIndexes("param2")[0]).isEqualTo(2);
   }
 
   @Test
@@ -66,7 +71,7 @@ public class SQLWithTest {
         .from("test_table x")
         .innerJoin("test_table2 x1 on x1.col = x.col");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "with with_table as (\nselect 1\nfrom test_table x\ninner join test_table2 x1 on x1.col = x.col\n)\nselect 1"
@@ -83,7 +88,7 @@ public class SQLWithTest {
         .from("test_table x")
         .leftJoin("test_table2 x1 on x1.col = x.col");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "with with_table as (\nselect 1\nfrom test_table x\nleft join test_table2 x1 on x1.col = x.col\n)\nselect 1"
@@ -100,7 +105,7 @@ public class SQLWithTest {
         .from("test_table x")
         .rightjoin("test_table2 x1 on x1.col = x.col");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "with with_table as (\nselect 1\nfrom test_table x\nright join test_table2 x1 on x1.col = x.col\n)\nselect 1"
@@ -117,7 +122,7 @@ public class SQLWithTest {
         .from("test_table x")
         .outerjoin("test_table2 x1 on x1.col = x.col");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "with with_table as (\nselect 1\nfrom test_table x\nouter join test_table2 x1 on x1.col = x.col\n)\nselect 1");
@@ -135,7 +140,7 @@ public class SQLWithTest {
         .leftJoin("test_table3 x2 on x2.col = x.col")
         .innerJoin("test_table4 x3 on x3.col = x.col");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase("with with_table as (\n"
                                                    + "select 1\nfrom test_table x"
@@ -156,7 +161,7 @@ public class SQLWithTest {
         .from("test_table")
         .order_by("1");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery)
         .isEqualToIgnoringCase("with with_table as (\nselect 1\nfrom test_table\norder by 1\n)\nselect 1");
@@ -172,7 +177,7 @@ public class SQLWithTest {
         .from("test_table")
         .group_by("asd");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery)
         .isEqualToIgnoringCase("with with_table as (\nselect 1\nfrom test_table\ngroup by asd\n)\nselect 1");
@@ -189,7 +194,7 @@ public class SQLWithTest {
         .group_by("asd")
         .having("asd > 0");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "with with_table as (\nselect 1\nfrom test_table\ngroup by asd\nhaving asd > 0\n)\nselect 1"
@@ -208,7 +213,7 @@ public class SQLWithTest {
         .limit("1")
         .offset("5");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery)
         .isEqualToIgnoringCase("with with_table as (\nselect 1\nfrom test_table\nlimit 1\noffset 5\n)\nselect 1");
@@ -224,7 +229,7 @@ public class SQLWithTest {
         .from("test_table")
         .limit("1");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase("with with_table as (\nselect 1\nfrom test_table\nlimit 1\n)\nselect 1");
   }
@@ -239,7 +244,7 @@ public class SQLWithTest {
         .select("1")
         .from("test_table");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase("with with_table as (\nselect 1\nfrom test_table\n)\nselect 1");
   }
@@ -252,7 +257,7 @@ public class SQLWithTest {
     sql.with("with_table")
         .select("1!");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase("with with_table as (\nselect 1!\n)\nselect 1");
   }
@@ -265,7 +270,7 @@ public class SQLWithTest {
     sql.with("with_table")
         .selectDistinct("1!");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase("with with_table as (\nselect distinct 1!\n)\nselect 1");
   }
@@ -280,7 +285,7 @@ public class SQLWithTest {
         .select("2")
         .select("3");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase("with with_table as (\nselect 1!, 2, 3\n)\nselect 1");
   }
@@ -299,7 +304,7 @@ public class SQLWithTest {
         .setValue("param1", "someValue1")
         .setValue("param2", "someValue2");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase("with with_table as ("
                                                    + "\nselect 1"
@@ -326,19 +331,19 @@ public class SQLWithTest {
         .setValue("param1", "someValue1")
         .setValue("param2", "someValue2");
 
-    sql.compile();
+    CompiledQuery query = sql.compile();
 
-    assertThat(withSql.indexMap).isNotNull();
-    assertThat(withSql.indexMap.size()).isEqualTo(2);
+    assertThat(query.getParameterNames()).isNotNull();
+    assertThat(query.getParameterNames().size()).isEqualTo(2);
 
-    assertThat(withSql.indexMap.get("param1")).isNotNull();
-    assertThat(withSql.indexMap.get("param1")).hasSize(2);
-    assertThat(withSql.indexMap.get("param1").get(0)).isEqualTo(1);
-    assertThat(withSql.indexMap.get("param1").get(1)).isEqualTo(3);
+    assertThat(query.getIndexes("param1")).isNotNull();
+    assertThat(query.getIndexes("param1")).hasSize(2);
+    assertThat(query.getIndexes("param1")[0]).isEqualTo(1);
+    assertThat(query.getIndexes("param1")[1]).isEqualTo(3);
 
-    assertThat(withSql.indexMap.get("param2")).isNotNull();
-    assertThat(withSql.indexMap.get("param2")).hasSize(1);
-    assertThat(withSql.indexMap.get("param2").get(0)).isEqualTo(2);
+    assertThat(query.getIndexes("param2")).isNotNull();
+    assertThat(query.getIndexes("param2")).hasSize(1);
+    assertThat(query.getIndexes("param2")[0]).isEqualTo(2);
 
     assertThat(withSql.valueMap).isNotNull();
     assertThat(withSql.valueMap.size()).isEqualTo(2);
@@ -358,7 +363,7 @@ public class SQLWithTest {
         .from("test_table")
         .where("test_table.column1 = 'asd'");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery)
         .isEqualToIgnoringCase(
@@ -378,7 +383,7 @@ public class SQLWithTest {
         .where("test_table.column1 = 'asd'")
         .where("test_table.column2 >= 42");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "with with_table as (\nselect 1, 2\nfrom test_table\nwhere test_table.column1 = 'asd' and test_table.column2 >= 42\n)\nselect 1"
@@ -402,7 +407,7 @@ public class SQLWithTest {
         .select("3")
         .from("test_table");
 
-    String sqlQuery = sql.compile();
+    String sqlQuery = sql.compile().getSql();
 
     assertThat(sqlQuery).isEqualToIgnoringCase(
         "with with_table1 as (\nselect 1\nfrom test_table\n)"
@@ -441,35 +446,36 @@ public class SQLWithTest {
         .where("column3 = :param3 and column1 = :param1")
         .setValue("param3", "someValue3");
 
-    sql.compile();
-
-    assertThat(sql.indexMap).isNotNull();
-    assertThat(sql.indexMap.size()).isEqualTo(3);
-
-    assertThat(sql.indexMap.get("param1")).isNotNull();
-    assertThat(sql.indexMap.get("param1")).hasSize(4);
-    assertThat(sql.indexMap.get("param1").get(0)).isEqualTo(1);
-    assertThat(sql.indexMap.get("param1").get(1)).isEqualTo(3);
-    assertThat(sql.indexMap.get("param1").get(2)).isEqualTo(6);
-    assertThat(sql.indexMap.get("param1").get(3)).isEqualTo(10);
-
-    assertThat(sql.indexMap.get("param2")).isNotNull();
-    assertThat(sql.indexMap.get("param2")).hasSize(3);
-    assertThat(sql.indexMap.get("param2").get(0)).isEqualTo(2);
-    assertThat(sql.indexMap.get("param2").get(1)).isEqualTo(4);
-    assertThat(sql.indexMap.get("param2").get(2)).isEqualTo(7);
-
-    assertThat(sql.indexMap.get("param3")).isNotNull();
-    assertThat(sql.indexMap.get("param3")).hasSize(3);
-    assertThat(sql.indexMap.get("param3").get(0)).isEqualTo(5);
-    assertThat(sql.indexMap.get("param3").get(1)).isEqualTo(8);
-    assertThat(sql.indexMap.get("param3").get(2)).isEqualTo(9);
-
-    assertThat(sql.valueMap).isNotNull();
-    assertThat(sql.valueMap.size()).isEqualTo(3);
-    assertThat(sql.valueMap.get("param1")).isEqualTo("someValue1");
-    assertThat(sql.valueMap.get("param2")).isEqualTo("someValue2");
-    assertThat(sql.valueMap.get("param3")).isEqualTo("someValue3");
+    CompiledQuery query = sql.compile();
+    Map<String, Object> values = sql.collectValues();
+
+    assertThat(query.getParameterNames()).isNotNull();
+    assertThat(query.getParameterNames().size()).isEqualTo(3);
+
+    assertThat(query.getIndexes("param1")).isNotNull();
+    assertThat(query.getIndexes("param1")).hasSize(4);
+    assertThat(query.getIndexes("param1")[0]).isEqualTo(1);
+    assertThat(query.getIndexes("param1")[1]).isEqualTo(3);
+    assertThat(query.getIndexes("param1")[2]).isEqualTo(6);
+    assertThat(query.getIndexes("param1")[3]).isEqualTo(10);
+
+    assertThat(query.getIndexes("param2")).isNotNull();
+    assertThat(query.getIndexes("param2")).hasSize(3);
+    assertThat(query.getIndexes("param2")[0]).isEqualTo(2);
+    assertThat(query.getIndexes("param2")[1]).isEqualTo(4);
+    assertThat(query.getIndexes("param2")[2]).isEqualTo(7);
+
+    assertThat(query.getIndexes("param3")).isNotNull();
+    assertThat(query.getIndexes("param3")).hasSize(3);
+    assertThat(query.getIndexes("param3")[0]).isEqualTo(5);
+    assertThat(query.getIndexes("param3")[1]).isEqualTo(8);
+    assertThat(query.getIndexes("param3")[2]).isEqualTo(9);
+
+    assertThat(values).isNotNull();
+    assertThat(values.size()).isEqualTo(3);
+    assertThat(values.get("param1")).isEqualTo("someValue1");
+    assertThat(values.get("param2")).isEqualTo("someValue2");
+    assertThat(values.get("param3")).isEqualTo("someValue3");
   }
 
   @Test(expected = IllegalArgumentException.class)
@@ -488,4 +494,71 @@ public class SQLWithTest {
     sql.compile();
   }
 
+  @Test
+  public void compile_more_than_once() {
+    SQL sql = new SQL()
+        .select("1")
+        .where("column1 = :param1")
+        .setValue("param1", "someValue1");
+
+    sql.with("with_table")
+        .select("1")
+        .from("test_table")
+        .where("column1 = :param1 and column2 = :param2")
+        .setValue("param2", "someValue2");
+
+    CompiledQuery first = sql.compile();
+    CompiledQuery second = sql.compile();
+
+    assertThat(second.getSql()).isEqualTo(first.getSql());
+    assertThat(second.getIndexes("param1")).isEqualTo(new int[]{1, 3});
+    assertThat(second.getIndexes("param2")).isEqualTo(new int[]{2});
+    assertThat(second.getPlaceholderCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void compile_to_appendable() throws Exception {
+    SQL sql = new SQL()
+        .select("1")
+        .where("column1 = :param1")
+        .limit(10)
+        .setValue("param1", "someValue1");
+
+    sql.with("with_table")
+        .select("1")
+        .from("test_table")
+        .where("column1 = :param1 and column2 in (:param2)")
+        .setValue("param2", Arrays.asList(1, 2, 3));
+
+    CompiledQuery compiled = sql.compile();
+
+    StringWriter writer = new StringWriter();
+    CompiledQuery streamed = sql.compileTo(writer);
+    CharBuffer buffer = CharBuffer.allocate(1024);
+    sql.compileTo(buffer);
+
+    assertThat(writer.toString()).isEqualTo(compiled.getSql());
+    assertThat(buffer.flip().toString()).isEqualTo(compiled.getSql());
+    assertThat(streamed.getParameterNames()).isEqualTo(compiled.getParameterNames());
+    assertThat(streamed.getIndexes("param1")).isEqualTo(new int[]{1, 6});
+    assertThat(streamed.getIndexes("param2")).isEqualTo(new int[]{2, 3, 4, 5});
+    assertThat(streamed.getPlaceholderCount()).isEqualTo(7);
+  }
+
+  @Test
+  public void using_appender_renders_with_tables() {
+    SQL sql = new SQL()
+        .select("1")
+        .from("with_table")
+        .where("column1 = :param1");
+
+    sql.with("with_table")
+        .select("1")
+        .from("test_table");
+
+    assertThat(sql.usingAppender(new StringBuilder()).toString()).isEqualToIgnoringCase(
+        "with with_table as (\nselect 1\nfrom test_table\n)\n"
+        + "select 1\nfrom with_table\nwhere column1 = :param1");
+  }
+
 }
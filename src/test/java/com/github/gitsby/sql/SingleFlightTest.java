@@ -0,0 +1,226 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  private Connection connection;
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table test_table (id int primary key)");
+      statement.execute("insert into test_table select x from system_range(1, 10)");
+    }
+    threads = Executors.newFixedThreadPool(CALLERS);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    threads.shutdownNow();
+    connection.close();
+  }
+
+  private static SQL query() {
+    return new SQL().select("id").from("test_table").where("id <= :maxId").order_by("id")
+        .setValue("maxId", 3);
+  }
+
+  // waits until every other caller joined the running query
+  private static void awaitCoalesced(SingleFlight flight, long count) throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (flight.coalescedCount() < count && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void identical_queries_execute_once() throws Exception {
+    SingleFlight flight = new SingleFlight();
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger mapped = new AtomicInteger();
+    RowMapper<Integer> mapper = rs -> {
+      if (mapped.getAndIncrement() == 0) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+      }
+      return rs.getInt(1);
+    };
+
+    List<Future<List<Integer>>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(threads.submit(() -> flight.query(connection, query(), mapper)));
+    }
+    awaitCoalesced(flight, CALLERS - 1);
+    assertThat(flight.inFlight()).isEqualTo(1);
+    release.countDown();
+
+    List<Integer> first = results.get(0).get(5, TimeUnit.SECONDS);
+    for (Future<List<Integer>> result : results) {
+      assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(first).containsExactly(1, 2, 3);
+    }
+    assertThat(mapped.get()).isEqualTo(3);
+    assertThat(flight.executionCount()).isEqualTo(1);
+    assertThat(flight.inFlight()).isEqualTo(0);
+
+    // completed queries are not cached
+    flight.query(connection, query(), mapper);
+    assertThat(flight.executionCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void failure_reaches_every_caller() throws Exception {
+    SingleFlight flight = new SingleFlight();
+    CountDownLatch release = new CountDownLatch(1);
+    RowMapper<Integer> mapper = rs -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new SQLException(e);
+      }
+      throw new SQLException("broken row", "22000");
+    };
+
+    List<Future<List<Integer>>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(threads.submit(() -> flight.query(connection, query(), mapper)));
+    }
+    awaitCoalesced(flight, CALLERS - 1);
+    release.countDown();
+
+    for (Future<List<Integer>> result : results) {
+      try {
+        result.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(SQLException.class);
+        assertThat(((SQLException) e.getCause()).getSQLState()).isEqualTo("22000");
+      }
+    }
+    assertThat(flight.executionCount()).isEqualTo(1);
+    assertThat(flight.inFlight()).isEqualTo(0);
+  }
+
+  @Test
+  public void excluded_template_runs_on_its_own() throws Exception {
+    SingleFlight flight = new SingleFlight().exclude(query().compile());
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger mapped = new AtomicInteger();
+    RowMapper<Integer> mapper = rs -> {
+      if (mapped.getAndIncrement() == 0) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+      }
+      return rs.getInt(1);
+    };
+
+    Future<List<Integer>> blocked = threads.submit(() -> flight.query(connection, query(), mapper));
+    while (mapped.get() == 0) {
+      Thread.sleep(1);
+    }
+    try (Connection other = DriverManager.getConnection("jdbc:h2:mem:")) {
+      try (Statement statement = other.createStatement()) {
+        statement.execute("create table test_table (id int primary key)");
+        statement.execute("insert into test_table values (1)");
+      }
+      assertThat(flight.query(other, query(), mapper)).containsExactly(1);
+    }
+    release.countDown();
+
+    assertThat(blocked.get(5, TimeUnit.SECONDS)).containsExactly(1, 2, 3);
+    assertThat(flight.executionCount()).isEqualTo(2);
+    assertThat(flight.coalescedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void other_mapper_instance_runs_on_its_own() throws Exception {
+    SingleFlight flight = new SingleFlight();
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger mapped = new AtomicInteger();
+    RowMapper<Integer> ids = new DelegatingMapper<>(rs -> {
+      if (mapped.getAndIncrement() == 0) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+      }
+      return rs.getInt(1);
+    });
+    RowMapper<String> names = new DelegatingMapper<>(rs -> "id " + rs.getInt(1));
+
+    Future<List<Integer>> blocked = threads.submit(() -> flight.query(connection, query(), ids));
+    while (mapped.get() == 0) {
+      Thread.sleep(1);
+    }
+    try (Connection other = DriverManager.getConnection("jdbc:h2:mem:")) {
+      try (Statement statement = other.createStatement()) {
+        statement.execute("create table test_table (id int primary key)");
+        statement.execute("insert into test_table values (1)");
+      }
+      assertThat(flight.query(other, query(), names)).containsExactly("id 1");
+    }
+    release.countDown();
+
+    assertThat(blocked.get(5, TimeUnit.SECONDS)).containsExactly(1, 2, 3);
+    assertThat(flight.executionCount()).isEqualTo(2);
+    assertThat(flight.coalescedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void result_cache_coalesces_misses() throws Exception {
+    SingleFlight flight = new SingleFlight();
+    ResultCache cache = new ResultCache(100, Duration.ofMinutes(1)).singleFlight(flight);
+
+    assertThat(cache.query(connection, query(), rs -> rs.getInt(1))).containsExactly(1, 2, 3);
+    assertThat(flight.executionCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  // mappers of one class that map to different types, like RecordMapper.of(A) and of(B)
+  private static final class DelegatingMapper<T> implements RowMapper<T> {
+
+    private final RowMapper<T> delegate;
+
+    private DelegatingMapper(RowMapper<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public T map(ResultSet rs) throws SQLException {
+      return delegate.map(rs);
+    }
+
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table test_table (id int primary key, status varchar(20))");
+      statement.execute("insert into test_table select x, 'new' from system_range(1, 100)");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  private static BoundQuery page(int limit, int offset) {
+    return new SQL()
+        .select("id")
+        .from("test_table")
+        .order_by("id")
+        .limit(limit)
+        .offset(offset)
+        .bind();
+  }
+
+  @Test
+  public void reuse_prepared_statement() throws Exception {
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      PreparedStatement first = cache.prepare(page(10, 0));
+      PreparedStatement second = cache.prepare(page(20, 40));
+
+      assertThat(second).isSameAs(first);
+      assertThat(cache.query(page(2, 40), rs -> rs.getInt(1))).containsExactly(41, 42);
+      assertThat(cache.hitCount()).isEqualTo(2);
+      assertThat(cache.missCount()).isEqualTo(1);
+      assertThat(cache.hitRate()).isEqualTo(2.0 / 3);
+    }
+  }
+
+  @Test
+  public void evicted_statement_is_closed() throws Exception {
+    try (StatementCache cache = new StatementCache(connection, 2)) {
+      PreparedStatement first = cache.prepare("select 1");
+      PreparedStatement second = cache.prepare("select 2");
+      cache.prepare("select 1");
+      PreparedStatement third = cache.prepare("select 3");
+
+      assertThat(second.isClosed()).isTrue();
+      assertThat(first.isClosed()).isFalse();
+      assertThat(cache.size()).isEqualTo(2);
+      assertThat(cache.evictionCount()).isEqualTo(1);
+      assertThat(cache.prepare("select 2").isClosed()).isFalse();
+      assertThat(third.isClosed()).isFalse();
+      assertThat(cache.missCount()).isEqualTo(4);
+    }
+  }
+
+  @Test
+  public void close_closes_statements() throws Exception {
+    StatementCache cache = new StatementCache(connection, 10);
+    PreparedStatement ps = cache.prepare("select 1");
+    int updateCount = cache.executeUpdate(new SQL()
+                                              .update("test_table")
+                                              .set("status = :status")
+                                              .where("id = :id")
+                                              .setValue("status", "done")
+                                              .setValue("id", 7)
+                                              .bind());
+    cache.close();
+
+    assertThat(updateCount).isEqualTo(1);
+    assertThat(ps.isClosed()).isTrue();
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(connection.isClosed()).isFalse();
+  }
+
+  @Test
+  public void replace_statement_closed_elsewhere() throws Exception {
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      PreparedStatement ps = cache.prepare("select 1");
+      ps.close();
+
+      assertThat(cache.prepare("select 1")).isNotSameAs(ps);
+      assertThat(cache.hitCount()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void unset_parameter_is_not_taken_from_previous_execution() throws Exception {
+    CompiledQuery query = new SQL().select("id").from("test_table").where("id = :a OR id = :b")
+        .order_by("id").compile();
+
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      assertThat(cache.query(query.bind().setInt("a", 1).setInt("b", 3), rs -> rs.getInt(1)))
+          .containsExactly(1, 3);
+      try {
+        cache.query(query.bind().setInt("a", 2), rs -> rs.getInt(1));
+        fail();
+      } catch (IllegalStateException e) {
+        assertThat(e.getMessage()).isEqualTo("Parameter b is not set");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+package com.github.gitsby.sql;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class TemplateCacheTest {
+
+  private static SQL query(String value) {
+    SQL sql = new SQL()
+        .select("1")
+        .from("test_table")
+        .where("column1 = :param1")
+        .setValue("param1", value);
+
+    sql.with("with_table")
+        .select("1")
+        .from("test_table")
+        .where("column2 = :param2");
+
+    return sql;
+  }
+
+  @Test
+  public void same_shape_hits() {
+    TemplateCache cache = new TemplateCache(10);
+
+    CompiledQuery first = query("someValue1").compile(cache);
+    CompiledQuery second = query("someValue2").compile(cache);
+
+    assertThat(second).isSameAs(first);
+    assertThat(first.getSql()).isEqualTo(query("someValue1").compile().getSql());
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void different_shape_misses() {
+    TemplateCache cache = new TemplateCache(10);
+
+    CompiledQuery first = query("someValue1").compile(cache);
+    CompiledQuery second = query("someValue1").order_by("1").compile(cache);
+
+    SQL third = query("someValue1");
+    third.with("with_table2").select("2");
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(third.compile(cache)).isNotSameAs(first);
+    assertThat(cache.hitCount()).isEqualTo(0);
+    assertThat(cache.missCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void join_type_is_part_of_shape() {
+    TemplateCache cache = new TemplateCache(10);
+
+    new SQL().select("1").from("test_table x").leftJoin("test_table2 x1 on x1.col = x.col")
+        .compile(cache);
+    CompiledQuery inner = new SQL().select("1").from("test_table x")
+        .innerJoin("test_table2 x1 on x1.col = x.col").compile(cache);
+
+    assertThat(inner.getSql()).contains("INNER JOIN");
+    assertThat(cache.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void evict_least_recently_used() {
+    TemplateCache cache = new TemplateCache(2);
+
+    new SQL().select("1").compile(cache);
+    new SQL().select("2").compile(cache);
+    new SQL().select("1").compile(cache);
+    new SQL().select("3").compile(cache);
+    new SQL().select("1").compile(cache);
+    new SQL().select("2").compile(cache);
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.hitCount()).isEqualTo(2);
+    assertThat(cache.missCount()).isEqualTo(4);
+    assertThat(cache.evictionCount()).isEqualTo(2);
+  }
+
+}